@@ -4,6 +4,7 @@ import org.jsoup.nodes.Document;
 import org.jsoup.parser.Parser;
 import org.jsoup.safety.Cleaner;
 import org.jsoup.safety.Whitelist;
+import org.jsoup.helper.BatchParser;
 import org.jsoup.helper.DataUtil;
 import org.jsoup.helper.HttpConnection;
 
@@ -11,6 +12,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
 
 /**
  The core public access point to the jsoup functionality.
@@ -160,6 +163,21 @@ public class Jsoup {
         return Parser.parseBodyFragment(bodyHtml, "");
     }
 
+    /**
+     Parse many HTML documents in parallel, returning the results in the order of the inputs. At most 64MB of inputs
+     are parsed or waiting to be returned at once. To set that limit, or to take the results as they complete, use a
+     {@link BatchParser}.
+
+     @param inputs   inputs to parse: strings, files, or byte buffers (see {@link BatchParser.Input})
+     @param executor executor to parse on, e.g. a fixed thread pool. Not shut down by this.
+     @return iterator of results, each holding a document or the exception its parse threw
+
+     @see BatchParser
+     */
+    public static Iterator<BatchParser.Result> parseAll(Iterable<? extends BatchParser.Input> inputs, Executor executor) {
+        return new BatchParser(executor, 64L * 1024 * 1024).parseInOrder(inputs);
+    }
+
     /**
      Fetch a URL, and parse it as HTML. Provided for compatibility; in most cases use {@link #connect(String)} instead.
      <p>
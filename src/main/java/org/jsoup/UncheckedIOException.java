@@ -0,0 +1,21 @@
+package org.jsoup;
+
+import java.io.IOException;
+
+/**
+ * Signals that an IOException occurred while reading input in a code path that does not declare IOException, such as
+ * when parsing from a {@link java.io.Reader}.
+ */
+public class UncheckedIOException extends RuntimeException {
+    public UncheckedIOException(IOException cause) {
+        super(cause);
+    }
+
+    /**
+     * Get the underlying IOException.
+     * @return the cause
+     */
+    public IOException ioException() {
+        return (IOException) getCause();
+    }
+}
@@ -0,0 +1,341 @@
+package org.jsoup.helper;
+
+import org.jsoup.UncheckedIOException;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Parses many HTML documents in parallel, on a supplied {@link Executor} (e.g. a fixed thread pool, a fork-join pool,
+ * or a virtual thread per task executor).
+ * <p>
+ * Results are pulled from the returned iterator, either in the order of the inputs or as they complete. Inputs are only
+ * handed to the executor while the total size of the inputs in flight (handed out, and not yet returned by the
+ * iterator) is under the limit, so the memory held by a batch is bounded however many inputs it has, and however slowly
+ * the results are consumed. Parsers are pooled by the batch parser and shared by its parses, so their state is reused
+ * whichever threads the executor runs the parses on (including a new thread for each).
+ * </p>
+ * <p>
+ * To parse in order with the default limits, use {@link org.jsoup.Jsoup#parseAll(Iterable, Executor)}.
+ * </p>
+ * <p>
+ * Example: <pre>{@code
+ * ExecutorService pool = Executors.newFixedThreadPool(8);
+ * Iterator<BatchParser.Result> results = new BatchParser(pool, 64 * 1024 * 1024).parseAsCompleted(inputs);
+ * while (results.hasNext()) {
+ *     BatchParser.Result result = results.next();
+ *     Document doc = result.document();
+ *     ...
+ * }}</pre>
+ * </p>
+ */
+public class BatchParser {
+    private final Executor executor;
+    private final long maxSizeInFlight;
+    private final BlockingQueue<Parser> parsers; // idle parsers, taken by parses of all batches; bounded, extras dropped
+
+    /**
+     * Create a batch parser, that keeps as many idle parsers for reuse as there are processors.
+     * @param executor executor to run the parses on. Not shut down by this.
+     * @param maxSizeInFlight the maximum total size (see {@link Input#size()}) of the inputs being parsed or waiting to
+     * be returned. An input larger than this is parsed on its own.
+     */
+    public BatchParser(Executor executor, long maxSizeInFlight) {
+        this(executor, maxSizeInFlight, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a batch parser.
+     * @param executor executor to run the parses on. Not shut down by this.
+     * @param maxSizeInFlight the maximum total size (see {@link Input#size()}) of the inputs being parsed or waiting to
+     * be returned. An input larger than this is parsed on its own.
+     * @param maxIdleParsers the most parsers to keep for reuse between parses. About the number of parses the executor
+     * runs at once.
+     */
+    public BatchParser(Executor executor, long maxSizeInFlight, int maxIdleParsers) {
+        Validate.notNull(executor);
+        Validate.isTrue(maxSizeInFlight > 0, "Max size in flight must be positive");
+        Validate.isTrue(maxIdleParsers > 0, "Max idle parsers must be positive");
+        this.executor = executor;
+        this.maxSizeInFlight = maxSizeInFlight;
+        parsers = new ArrayBlockingQueue<Parser>(maxIdleParsers);
+    }
+
+    /**
+     * Parse the inputs, returning the results in the same order as the inputs. A slow parse holds back the results
+     * after it (and so, by the size limit, the parses after it).
+     * @param inputs inputs to parse; iterated on the calling thread, as results are taken
+     * @return iterator of results
+     */
+    public Iterator<Result> parseInOrder(Iterable<? extends Input> inputs) {
+        return new Batch(inputs.iterator(), true);
+    }
+
+    /**
+     * Parse the inputs, returning the results in the order the parses complete.
+     * @param inputs inputs to parse; iterated on the calling thread, as results are taken
+     * @return iterator of results
+     */
+    public Iterator<Result> parseAsCompleted(Iterable<? extends Input> inputs) {
+        return new Batch(inputs.iterator(), false);
+    }
+
+    /**
+     * An input to parse.
+     */
+    public static abstract class Input {
+        /**
+         * Get the size of the input, in bytes, which is counted towards the limit of the size in flight.
+         * @return size of the input
+         */
+        public abstract long size();
+
+        /**
+         * Parse the input.
+         * @param parser parser to use, with the default settings. It's pooled, so is reset and reused by later parses;
+         * don't keep it, or replace its tree builder.
+         * @return the parsed document
+         * @throws IOException if the input can't be read
+         */
+        public abstract Document parse(Parser parser) throws IOException;
+
+        /**
+         * Create an input of a string of HTML.
+         * @param html HTML to parse
+         * @param baseUri base URI of the document, for resolving relative URLs
+         * @return input
+         */
+        public static Input of(final String html, final String baseUri) {
+            Validate.notNull(html);
+            return new Input() {
+                public long size() {
+                    return html.length() * 2L; // two bytes a char
+                }
+
+                public Document parse(Parser parser) {
+                    return parser.parseInput(html, baseUri);
+                }
+            };
+        }
+
+        /**
+         * Create an input of a file, which is read (or mapped) when it is parsed.
+         * @param file file to parse
+         * @param charsetName charset of the file, or null to detect it from the content
+         * @param baseUri base URI of the document, for resolving relative URLs
+         * @return input
+         */
+        public static Input of(final File file, final String charsetName, final String baseUri) {
+            Validate.notNull(file);
+            return new Input() {
+                public long size() {
+                    return file.length();
+                }
+
+                public Document parse(Parser parser) throws IOException {
+                    return DataUtil.parseByteData(DataUtil.readFileToByteBuffer(file), charsetName, baseUri, parser);
+                }
+            };
+        }
+
+        /**
+         * Create an input of bytes. The buffer's position is not changed by parsing.
+         * @param bytes bytes to parse, from the buffer's position to its limit
+         * @param charsetName charset of the bytes, or null to detect it from the content
+         * @param baseUri base URI of the document, for resolving relative URLs
+         * @return input
+         */
+        public static Input of(final ByteBuffer bytes, final String charsetName, final String baseUri) {
+            Validate.notNull(bytes);
+            return new Input() {
+                public long size() {
+                    return bytes.remaining();
+                }
+
+                public Document parse(Parser parser) {
+                    return DataUtil.parseByteData(bytes.duplicate(), charsetName, baseUri, parser);
+                }
+            };
+        }
+    }
+
+    /**
+     * The result of parsing an input: its document, or the exception that the parse threw.
+     */
+    public static class Result {
+        private final Input input;
+        private final int index;
+        private final Document document;
+        private final Throwable error;
+
+        private Result(Input input, int index, Document document, Throwable error) {
+            this.input = input;
+            this.index = index;
+            this.document = document;
+            this.error = error;
+        }
+
+        /**
+         * Get the input that was parsed.
+         * @return input
+         */
+        public Input input() {
+            return input;
+        }
+
+        /**
+         * Get the position of the input in the batch's inputs.
+         * @return index of the input, from 0
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Get the parsed document.
+         * @return document
+         * @throws UncheckedIOException if the input could not be read
+         * @throws RuntimeException if the parse threw another exception
+         */
+        public Document document() {
+            if (error instanceof IOException)
+                throw new UncheckedIOException((IOException) error);
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            if (error instanceof Error)
+                throw (Error) error;
+            return document;
+        }
+
+        /**
+         * Get the exception thrown by the parse, if it failed.
+         * @return exception; null if the parse succeeded
+         */
+        public Throwable error() {
+            return error;
+        }
+    }
+
+    // a parse running on the executor. when done, it queues itself for the as-completed iterator
+    private static class Parse extends FutureTask<Document> {
+        private final Input input;
+        private final int index;
+        private final long size;
+        private final BlockingQueue<Parse> completed; // null when returning results in order
+
+        Parse(final Input input, int index, long size, final BlockingQueue<Parser> parsers,
+              BlockingQueue<Parse> completed) {
+            super(new Callable<Document>() {
+                public Document call() throws IOException {
+                    Parser parser = parsers.poll();
+                    if (parser == null)
+                        parser = Parser.htmlParser();
+                    try {
+                        return input.parse(parser);
+                    } finally {
+                        parsers.offer(parser.reset()); // dropped if enough are idle
+                    }
+                }
+            });
+            this.input = input;
+            this.index = index;
+            this.size = size;
+            this.completed = completed;
+        }
+
+        @Override
+        protected void done() {
+            if (completed != null)
+                completed.add(this);
+        }
+
+        // the executor wouldn't run this, so it fails with that
+        void rejected(RejectedExecutionException e) {
+            setException(e);
+        }
+
+        Result result() throws InterruptedException {
+            try {
+                return new Result(input, index, get(), null);
+            } catch (ExecutionException e) {
+                return new Result(input, index, null, e.getCause());
+            }
+        }
+    }
+
+    private class Batch implements Iterator<Result> {
+        private final Iterator<? extends Input> inputs;
+        private final LinkedList<Parse> pending = new LinkedList<Parse>(); // in input order
+        private final BlockingQueue<Parse> completed; // in completion order; null when returning in order
+        private Input next; // the next input, held while there isn't room for it
+        private int index;
+        private long sizeInFlight;
+
+        Batch(Iterator<? extends Input> inputs, boolean inOrder) {
+            this.inputs = inputs;
+            completed = inOrder ? null : new LinkedBlockingQueue<Parse>();
+        }
+
+        public boolean hasNext() {
+            return !pending.isEmpty() || next != null || inputs.hasNext();
+        }
+
+        public Result next() {
+            submit();
+            if (pending.isEmpty())
+                throw new NoSuchElementException();
+
+            Parse parse;
+            Result result;
+            try {
+                parse = completed == null ? pending.getFirst() : completed.take();
+                result = parse.result();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a parse to complete");
+            }
+            pending.remove(parse);
+            sizeInFlight -= parse.size;
+            submit(); // refill while the caller handles this result
+            return result;
+        }
+
+        // hands inputs to the executor while there's room in flight
+        private void submit() {
+            while (next != null || inputs.hasNext()) {
+                if (next == null)
+                    next = inputs.next();
+                long size = next.size();
+                if (!pending.isEmpty() && sizeInFlight + size > maxSizeInFlight)
+                    return;
+                Parse parse = new Parse(next, index++, size, parsers, completed);
+                next = null;
+                pending.add(parse);
+                sizeInFlight += size;
+                try {
+                    executor.execute(parse);
+                } catch (RejectedExecutionException e) {
+                    parse.rejected(e); // returned as its result's error, rather than waited on forever
+                }
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.jsoup.helper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Locale;
+
+/**
+ * Prescans the start of undecoded HTML bytes for a byte order mark, or a {@code <meta charset>} or
+ * {@code <meta http-equiv="Content-Type">} declaration, following the WHATWG "prescan a byte stream to determine its
+ * encoding" algorithm. This lets the data be decoded and parsed once in the correct charset, rather than parsed as
+ * UTF-8 first to find the meta tag.
+ */
+final class CharsetPrescanner {
+    static final int prescanLength = 1024 * 4; // how far into the data to look for a meta charset
+
+    private final ByteBuffer bytes;
+    private final int end;
+    private int pos;
+    private final StringBuilder attrName = new StringBuilder();
+    private final StringBuilder attrValue = new StringBuilder();
+
+    private CharsetPrescanner(ByteBuffer bytes, int start, int end) {
+        this.bytes = bytes;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * Detect the charset of HTML byte data, from a UTF-8 byte order mark or a meta charset declaration in the first
+     * {@link #prescanLength} bytes. Does not change the position of the buffer.
+     * @param bytes byte data
+     * @return name of a supported charset, or null if none was found
+     */
+    static String detect(ByteBuffer bytes) {
+        int start = bytes.position();
+        int end = Math.min(bytes.limit(), start + prescanLength);
+        if (end - start >= 3 && (bytes.get(start) & 0xFF) == 0xEF && (bytes.get(start + 1) & 0xFF) == 0xBB
+                && (bytes.get(start + 2) & 0xFF) == 0xBF)
+            return DataUtil.defaultCharset; // UTF-8 BOM. takes precedence over the meta
+        return new CharsetPrescanner(bytes, start, end).scan();
+    }
+
+    private String scan() {
+        while (pos < end) {
+            if (matches("<!--")) {
+                pos = indexOf("-->", pos + 2);
+                if (pos == -1)
+                    return null;
+                pos += 2;
+            } else if (matchesIgnoreCase("<meta") && (isWhitespace(at(pos + 5)) || at(pos + 5) == '/')) {
+                pos += 6;
+                String charset = metaCharset();
+                if (charset != null)
+                    return charset;
+            } else if (at(pos) == '<' && (isLetter(at(pos + 1)) || (at(pos + 1) == '/' && isLetter(at(pos + 2))))) {
+                // some other tag. skip its name and attributes, so a '>' inside a quoted value doesn't throw us off
+                pos++;
+                while (pos < end && !isWhitespace(at(pos)) && at(pos) != '>')
+                    pos++;
+                while (nextAttribute()) {}
+            } else if (matches("<!") || matches("</") || matches("<?")) {
+                pos = indexOf(">", pos + 2);
+                if (pos == -1)
+                    return null;
+            }
+            pos++;
+        }
+        return null;
+    }
+
+    // reads the attributes of a meta tag, returning the declared charset if it is usable
+    private String metaCharset() {
+        boolean gotPragma = false;
+        Boolean needPragma = null;
+        String charset = null;
+        boolean seenHttpEquiv = false, seenContent = false, seenCharset = false; // only the first of each counts
+
+        while (nextAttribute()) {
+            String name = attrName.toString();
+            if (name.equals("http-equiv") && !seenHttpEquiv) {
+                seenHttpEquiv = true;
+                if (attrValue.toString().equalsIgnoreCase("content-type"))
+                    gotPragma = true;
+            } else if (name.equals("content") && !seenContent) {
+                seenContent = true;
+                if (charset == null) {
+                    charset = DataUtil.getCharsetFromContentType(attrValue.toString());
+                    if (charset != null)
+                        needPragma = Boolean.TRUE;
+                }
+            } else if (name.equals("charset") && !seenCharset) {
+                seenCharset = true;
+                charset = attrValue.toString();
+                needPragma = Boolean.FALSE;
+            }
+        }
+
+        if (needPragma == null || (needPragma && !gotPragma) || charset == null)
+            return null;
+        return supportedCharset(charset);
+    }
+
+    private static String supportedCharset(String charset) {
+        charset = charset.trim().replaceAll("[\"']", "");
+        if (charset.length() == 0)
+            return null;
+        String lower = charset.toLowerCase(Locale.ENGLISH);
+        if (lower.startsWith("utf-16")) // data that declared itself in ascii can't be utf-16
+            return DataUtil.defaultCharset;
+        if (lower.equals("x-user-defined"))
+            return "windows-1252";
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the next attribute of a tag into attrName and attrValue.
+     * @return true if an attribute was read; false at the end of the tag (positioned on the '>') or data.
+     */
+    private boolean nextAttribute() {
+        while (pos < end && (isWhitespace(at(pos)) || at(pos) == '/'))
+            pos++;
+        if (pos >= end || at(pos) == '>')
+            return false;
+
+        attrName.setLength(0);
+        attrValue.setLength(0);
+        // name
+        while (true) {
+            int b = at(pos);
+            if (b == -1)
+                return false;
+            if (b == '=' && attrName.length() > 0)
+                break;
+            if (isWhitespace(b)) {
+                while (isWhitespace(at(pos)))
+                    pos++;
+                if (at(pos) != '=')
+                    return true; // attribute without a value
+                break;
+            }
+            if (b == '/' || b == '>')
+                return true;
+            attrName.append((char) lowerCase(b));
+            pos++;
+        }
+        // on the '='. value
+        pos++;
+        while (isWhitespace(at(pos)))
+            pos++;
+        int b = at(pos);
+        if (b == '"' || b == '\'') {
+            int quote = b;
+            pos++;
+            while ((b = at(pos)) != quote) {
+                if (b == -1)
+                    return false;
+                attrValue.append((char) b);
+                pos++;
+            }
+            pos++;
+            return true;
+        }
+        while ((b = at(pos)) != -1 && !isWhitespace(b) && b != '>') {
+            attrValue.append((char) b);
+            pos++;
+        }
+        return b != -1;
+    }
+
+    private int at(int i) {
+        return i < end ? bytes.get(i) & 0xFF : -1;
+    }
+
+    private boolean matches(String seq) {
+        for (int i = 0; i < seq.length(); i++) {
+            if (at(pos + i) != seq.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean matchesIgnoreCase(String lowerSeq) {
+        for (int i = 0; i < lowerSeq.length(); i++) {
+            if (lowerCase(at(pos + i)) != lowerSeq.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private int indexOf(String seq, int from) {
+        for (int i = from; i <= end - seq.length(); i++) {
+            int j = 0;
+            while (j < seq.length() && at(i + j) == seq.charAt(j))
+                j++;
+            if (j == seq.length())
+                return i;
+        }
+        return -1;
+    }
+
+    private static int lowerCase(int b) {
+        return (b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b;
+    }
+
+    private static boolean isLetter(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\f' || b == '\r';
+    }
+}
@@ -6,6 +6,7 @@ import org.jsoup.parser.Parser;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.util.regex.Matcher;
@@ -20,6 +21,7 @@ public class DataUtil {
     private static final Pattern charsetPattern = Pattern.compile("(?i)\\bcharset=\\s*(?:\"|')?([^\\s,;\"']*)");
     static final String defaultCharset = "UTF-8"; // used if not found in header or meta charset
     private static final int bufferSize = 0x20000; // ~130K.
+    static final int mapThreshold = 0x100000; // 1MB. files at least this size are memory mapped rather than read
 
     private DataUtil() {}
 
@@ -63,57 +65,64 @@ public class DataUtil {
         return parseByteData(byteData, charsetName, baseUri, parser);
     }
 
-    // reads bytes first into a buffer, then decodes with the appropriate charset. done this way to support
-    // switching the chartset midstream when a meta http-equiv tag defines the charset.
-    // todo - this is getting gnarly. needs a rewrite.
+    // reads bytes first into a buffer, then decodes with the appropriate charset. the charset is found by prescanning
+    // the bytes for a BOM or meta charset, so that the data is only decoded and parsed once. if the meta is past the
+    // prescan window, falls back to parsing as UTF-8 and switching the charset when the meta is found in the DOM.
     static Document parseByteData(ByteBuffer byteData, String charsetName, String baseUri, Parser parser) {
         String docData;
         Document doc = null;
-        if (charsetName == null) { // determine from meta. safe parse as UTF-8
-            // look for <meta http-equiv="Content-Type" content="text/html;charset=gb2312"> or HTML5 <meta charset="gb2312">
+        if (charsetName == null) // look for a BOM, <meta http-equiv="Content-Type" content="text/html;charset=gb2312"> or HTML5 <meta charset="gb2312">
+            charsetName = CharsetPrescanner.detect(byteData);
+
+        if (charsetName == null) { // not in the prescan window. determine from meta. safe parse as UTF-8
             docData = Charset.forName(defaultCharset).decode(byteData).toString();
-            doc = parser.parseInput(docData, baseUri);
-            Element meta = doc.select("meta[http-equiv=content-type], meta[charset]").first();
-            if (meta != null) { // if not found, will keep utf-8 as best attempt
-                String foundCharset;
-                if (meta.hasAttr("http-equiv")) {
-                    foundCharset = getCharsetFromContentType(meta.attr("content"));
-                    if (foundCharset == null && meta.hasAttr("charset")) {
-                        try {
-                            if (Charset.isSupported(meta.attr("charset"))) {
-                                foundCharset = meta.attr("charset");
+            if (byteData.limit() > CharsetPrescanner.prescanLength) {
+                doc = parser.parseInput(docData, baseUri);
+                Element meta = doc.select("meta[http-equiv=content-type], meta[charset]").first();
+                if (meta != null) { // if not found, will keep utf-8 as best attempt
+                    String foundCharset;
+                    if (meta.hasAttr("http-equiv")) {
+                        foundCharset = getCharsetFromContentType(meta.attr("content"));
+                        if (foundCharset == null && meta.hasAttr("charset")) {
+                            try {
+                                if (Charset.isSupported(meta.attr("charset"))) {
+                                    foundCharset = meta.attr("charset");
+                                }
+                            } catch (IllegalCharsetNameException e) {
+                                foundCharset = null;
                             }
-                        } catch (IllegalCharsetNameException e) {
-                            foundCharset = null;
                         }
+                    } else {
+                        foundCharset = meta.attr("charset");
                     }
-                } else {
-                    foundCharset = meta.attr("charset");
-                }
 
-                if (foundCharset != null && foundCharset.length() != 0 && !foundCharset.equals(defaultCharset)) { // need to re-decode
-                    foundCharset = foundCharset.trim().replaceAll("[\"']", "");
-                    charsetName = foundCharset;
-                    byteData.rewind();
-                    docData = Charset.forName(foundCharset).decode(byteData).toString();
-                    doc = null;
+                    if (foundCharset != null && foundCharset.length() != 0 && !foundCharset.equals(defaultCharset)) { // need to re-decode
+                        foundCharset = foundCharset.trim().replaceAll("[\"']", "");
+                        charsetName = foundCharset;
+                        byteData.rewind();
+                        docData = Charset.forName(foundCharset).decode(byteData).toString();
+                        doc = null;
+                    }
                 }
             }
-        } else { // specified by content type header (or by user on file load)
+        } else { // specified by content type header (or by user on file load), or found by the prescan
             Validate.notEmpty(charsetName, "Must set charset arg to character set of file to parse. Set to null to attempt to detect from HTML");
             docData = Charset.forName(charsetName).decode(byteData).toString();
         }
         // UTF-8 BOM indicator. takes precedence over everything else. rarely used. re-decodes incase above decoded incorrectly
         if (docData.length() > 0 && docData.charAt(0) == 65279) {
-            byteData.rewind();
-            docData = Charset.forName(defaultCharset).decode(byteData).toString();
+            if (!defaultCharset.equals(charsetName)) {
+                byteData.rewind();
+                docData = Charset.forName(defaultCharset).decode(byteData).toString();
+            }
             docData = docData.substring(1);
             charsetName = defaultCharset;
             doc = null;
         }
         if (doc == null) {
             doc = parser.parseInput(docData, baseUri);
-            doc.outputSettings().charset(charsetName);
+            if (charsetName != null)
+                doc.outputSettings().charset(charsetName);
         }
         return doc;
     }
@@ -154,10 +163,26 @@ public class DataUtil {
     }
 
     static ByteBuffer readFileToByteBuffer(File file) throws IOException {
+        return readFileToByteBuffer(file, mapThreshold);
+    }
+
+    /**
+     * Read a file into a byte buffer. Files of at least mapThreshold bytes are mapped read-only, so the data is decoded
+     * straight from the page cache instead of first being copied into a heap array. Smaller files are read, as mapping
+     * has a higher setup cost.
+     * @param file file to read
+     * @param mapThreshold file size in bytes from which to memory map the file
+     * @return the byte buffer
+     * @throws IOException if the file can't be read
+     */
+    static ByteBuffer readFileToByteBuffer(File file, long mapThreshold) throws IOException {
         RandomAccessFile randomAccessFile = null;
         try {
             randomAccessFile = new RandomAccessFile(file, "r");
-            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            long length = randomAccessFile.length();
+            if (length >= mapThreshold) // the mapping remains valid after the file is closed
+                return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            byte[] bytes = new byte[(int) length];
             randomAccessFile.readFully(bytes);
             return ByteBuffer.wrap(bytes);
         } finally {
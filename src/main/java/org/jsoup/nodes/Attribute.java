@@ -18,7 +18,9 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
     };
 
     private String key;
-    private String value;
+    private String value; // null until decoded, if created from an encoded value
+    private String encodedValue; // the html encoded value, if created from one. decoded on first read
+    Attributes parent; // the set this is a view of, if any; value changes are set there
 
     /**
      * Create a new attribute from unencoded (raw) key and value.
@@ -29,10 +31,21 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
     public Attribute(String key, String value) {
         Validate.notEmpty(key);
         Validate.notNull(value);
-        this.key = key.trim().toLowerCase();
+        this.key = normaliseKey(key);
         this.value = value;
     }
 
+    // a view of an attribute in a set, with the key already normalised
+    Attribute(String key, String value, Attributes parent) {
+        this.key = key;
+        this.value = value;
+        this.parent = parent;
+    }
+
+    static String normaliseKey(String key) {
+        return key.trim().toLowerCase();
+    }
+
     /**
      Get the attribute key.
      @return the attribute key
@@ -47,7 +60,7 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
      */
     public void setKey(String key) {
         Validate.notEmpty(key);
-        this.key = key.trim().toLowerCase();
+        this.key = normaliseKey(key);
     }
 
     /**
@@ -55,17 +68,33 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
      @return the attribute value
      */
     public String getValue() {
+        String value = this.value;
+        if (value == null) { // decoding is idempotent, so a racing read just decodes again
+            value = Entities.unescape(encodedValue, true);
+            this.value = value;
+        }
         return value;
     }
 
+    boolean isDecoded() {
+        return value != null;
+    }
+
     /**
-     Set the attribute value.
+     Set the attribute value. If this attribute was put in, or read from, an {@link Attributes} set, the value is also
+     set there.
      @param value the new attribute value; must not be null
      */
     public String setValue(String value) {
         Validate.notNull(value);
-        String old = this.value;
+        String old = getValue();
         this.value = value;
+        encodedValue = null;
+        if (parent != null) {
+            int i = parent.indexOfKey(key);
+            if (i != Attributes.NotFound)
+                parent.setValue(i, value);
+        }
         return old;
     }
 
@@ -80,8 +109,12 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
     }
     
     protected void html(StringBuilder accum, Document.OutputSettings out) {
+        html(key, getValue(), accum, out);
+    }
+
+    static void html(String key, String value, StringBuilder accum, Document.OutputSettings out) {
         accum.append(key);
-        if (!shouldCollapseAttribute(out)) {
+        if (!shouldCollapseAttribute(key, value, out)) {
             accum.append("=\"");
             Entities.escape(accum, value, out, true, false, false);
             accum.append('"');
@@ -97,17 +130,25 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
     }
 
     /**
-     * Create a new Attribute from an unencoded key and a HTML attribute encoded value.
+     * Create a new Attribute from an unencoded key and a HTML attribute encoded value. The value is decoded when it is
+     * first read, so values that are never read are never decoded.
      * @param unencodedKey assumes the key is not encoded, as can be only run of simple \w chars.
      * @param encodedValue HTML attribute encoded value
      * @return attribute
      */
     public static Attribute createFromEncoded(String unencodedKey, String encodedValue) {
-        String value = Entities.unescape(encodedValue, true);
-        return new Attribute(unencodedKey, value);
+        Validate.notNull(encodedValue);
+        Attribute attribute = new Attribute(unencodedKey, "");
+        attribute.value = null;
+        attribute.encodedValue = encodedValue;
+        return attribute;
     }
 
     protected boolean isDataAttribute() {
+        return isDataAttribute(key);
+    }
+
+    static boolean isDataAttribute(String key) {
         return key.startsWith(Attributes.dataPrefix) && key.length() > Attributes.dataPrefix.length();
     }
 
@@ -115,6 +156,10 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
      * Collapsible if it's a boolean attribute and value is empty or same as name
      */
     protected final boolean shouldCollapseAttribute(Document.OutputSettings out) {
+        return shouldCollapseAttribute(key, getValue(), out);
+    }
+
+    private static boolean shouldCollapseAttribute(String key, String value, Document.OutputSettings out) {
         return ("".equals(value) || value.equalsIgnoreCase(key))
                 && out.syntax() == Document.OutputSettings.Syntax.html
                 && Arrays.binarySearch(booleanAttributes, key) >= 0;
@@ -128,7 +173,7 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
         Attribute attribute = (Attribute) o;
 
         if (key != null ? !key.equals(attribute.key) : attribute.key != null) return false;
-        if (value != null ? !value.equals(attribute.value) : attribute.value != null) return false;
+        if (!getValue().equals(attribute.getValue())) return false;
 
         return true;
     }
@@ -136,14 +181,16 @@ public class Attribute implements Map.Entry<String, String>, Cloneable  {
     @Override
     public int hashCode() {
         int result = key != null ? key.hashCode() : 0;
-        result = 31 * result + (value != null ? value.hashCode() : 0);
+        result = 31 * result + getValue().hashCode();
         return result;
     }
 
     @Override
     public Attribute clone() {
         try {
-            return (Attribute) super.clone(); // only fields are immutable strings key and value, so no more deep copy required
+            Attribute clone = (Attribute) super.clone(); // other fields are immutable strings, so no more deep copy required
+            clone.parent = null; // a copy, not a view
+            return clone;
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
@@ -16,10 +16,15 @@ import java.util.*;
  */
 public class Attributes implements Iterable<Attribute>, Cloneable {
     protected static final String dataPrefix = "data-";
-    
-    private LinkedHashMap<String, Attribute> attributes = null;
-    // linked hash map to preserve insertion order.
-    // null be default as so many elements have no attributes -- saves a good chunk of memory
+    static final int NotFound = -1;
+    private static final int InitialCapacity = 4; // most elements have few attributes; grows by doubling
+
+    // insertion ordered parallel arrays, with keys normalised on insert, so lookups are a scan of (usually) a few keys.
+    // null by default as so many elements have no attributes -- saves a good chunk of memory
+    private int size = 0;
+    private String[] keys = null;
+    private Object[] vals = null; // a String value; or an Attribute holding an encoded value, until it is first read
+    Node owner; // the node these are the attributes of, if any; told when its id is changed here
 
     /**
      Get an attribute value by key.
@@ -29,12 +34,8 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
      */
     public String get(String key) {
         Validate.notEmpty(key);
-
-        if (attributes == null)
-            return "";
-
-        Attribute attr = attributes.get(key.toLowerCase());
-        return attr != null ? attr.getValue() : "";
+        int i = indexOfNormalKey(key);
+        return i == NotFound ? "" : value(i);
     }
 
     /**
@@ -43,19 +44,55 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
      @param value attribute value
      */
     public void put(String key, String value) {
-        Attribute attr = new Attribute(key, value);
-        put(attr);
+        Validate.notEmpty(key);
+        Validate.notNull(value);
+        putNormal(Attribute.normaliseKey(key), value);
     }
 
     /**
-     Set a new attribute, or replace an existing one by key.
+     Set a new attribute, or replace an existing one by key. The attribute is then a view of this set: setting its
+     value sets the value here.
      @param attribute attribute
      */
     public void put(Attribute attribute) {
         Validate.notNull(attribute);
-        if (attributes == null)
-             attributes = new LinkedHashMap<String, Attribute>(2);
-        attributes.put(attribute.getKey(), attribute);
+        putNormal(attribute.getKey(), attribute.isDecoded() ? attribute.getValue() : attribute);
+        attribute.parent = this;
+    }
+
+    private void putNormal(String key, Object value) {
+        int i = indexOfKey(key);
+        String oldId = tracksId(key) ? (i == NotFound ? "" : value(i)) : null;
+        if (i != NotFound) {
+            vals[i] = value;
+        } else {
+            ensureCapacity(size + 1);
+            keys[size] = key;
+            vals[size] = value;
+            size++;
+        }
+        if (oldId != null)
+            owner.idChanged(oldId);
+    }
+
+    // if the owner needs telling about a change to this key, for its document's id index
+    private boolean tracksId(String key) {
+        return owner != null && owner.inIdIndex && key.equals("id");
+    }
+
+    private void ensureCapacity(int min) {
+        if (keys == null) {
+            keys = new String[Math.max(min, InitialCapacity)];
+            vals = new Object[keys.length];
+        } else if (keys.length < min) {
+            int capacity = Math.max(min, keys.length * 2);
+            String[] newKeys = new String[capacity];
+            Object[] newVals = new Object[capacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(vals, 0, newVals, 0, size);
+            keys = newKeys;
+            vals = newVals;
+        }
     }
 
     /**
@@ -64,9 +101,23 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
      */
     public void remove(String key) {
         Validate.notEmpty(key);
-        if (attributes == null)
-            return;
-        attributes.remove(key.toLowerCase());
+        int i = indexOfNormalKey(key);
+        if (i != NotFound)
+            remove(i);
+    }
+
+    private void remove(int index) {
+        String oldId = tracksId(keys[index]) ? value(index) : null;
+        int shifted = size - index - 1;
+        if (shifted > 0) {
+            System.arraycopy(keys, index + 1, keys, index, shifted);
+            System.arraycopy(vals, index + 1, vals, index, shifted);
+        }
+        size--;
+        keys[size] = null; // release for gc
+        vals[size] = null;
+        if (oldId != null)
+            owner.idChanged(oldId);
     }
 
     /**
@@ -75,7 +126,44 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
      @return true if key exists, false otherwise
      */
     public boolean hasKey(String key) {
-        return attributes != null && attributes.containsKey(key.toLowerCase());
+        return indexOfNormalKey(key) != NotFound;
+    }
+
+    // finds a key that is already normalised, e.g. one read from another set
+    int indexOfKey(String key) {
+        for (int i = 0; i < size; i++) {
+            if (key.equals(keys[i]))
+                return i;
+        }
+        return NotFound;
+    }
+
+    // finds a key given by the user. as keys are usually given in lower-case, try it as is before lower-casing
+    private int indexOfNormalKey(String key) {
+        int i = indexOfKey(key);
+        if (i == NotFound) {
+            String lowerKey = key.toLowerCase();
+            if (!lowerKey.equals(key))
+                i = indexOfKey(lowerKey);
+        }
+        return i;
+    }
+
+    // the value at the index, decoding it if it was held encoded
+    private String value(int index) {
+        Object val = vals[index];
+        if (val instanceof String)
+            return (String) val;
+        String value = ((Attribute) val).getValue(); // decoding is idempotent, so a racing read just decodes again
+        vals[index] = value;
+        return value;
+    }
+
+    void setValue(int index, String value) {
+        String oldId = tracksId(keys[index]) ? value(index) : null;
+        vals[index] = value;
+        if (oldId != null)
+            owner.idChanged(oldId);
     }
 
     /**
@@ -83,9 +171,7 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
      @return size
      */
     public int size() {
-        if (attributes == null)
-            return 0;
-        return attributes.size();
+        return size;
     }
 
     /**
@@ -95,9 +181,18 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
     public void addAll(Attributes incoming) {
         if (incoming.size() == 0)
             return;
-        if (attributes == null)
-            attributes = new LinkedHashMap<String, Attribute>(incoming.size());
-        attributes.putAll(incoming.attributes);
+        ensureCapacity(size + incoming.size);
+        for (int i = 0; i < incoming.size; i++)
+            putNormal(incoming.keys[i], copyOf(incoming.vals[i]));
+    }
+
+    // attributes holding encoded values may be mutated via their view, so aren't shared between sets
+    private Object copyOf(Object val) {
+        if (val instanceof String)
+            return val;
+        Attribute attribute = ((Attribute) val).clone();
+        attribute.parent = this;
+        return attribute;
     }
     
     public Iterator<Attribute> iterator() {
@@ -105,18 +200,18 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
     }
 
     /**
-     Get the attributes as a List, for iteration. Do not modify the keys of the attributes via this view, as changes
-     to keys will not be recognised in the containing set.
+     Get the attributes as a List, for iteration. The attributes are views of this set: setting the value of one sets
+     the value here. Do not modify the keys of the attributes via this view, as changes to keys will not be recognised
+     in the containing set.
      @return an view of the attributes as a List.
      */
     public List<Attribute> asList() {
-        if (attributes == null)
+        if (size == 0)
             return Collections.emptyList();
 
-        List<Attribute> list = new ArrayList<Attribute>(attributes.size());
-        for (Map.Entry<String, Attribute> entry : attributes.entrySet()) {
-            list.add(entry.getValue());
-        }
+        List<Attribute> list = new ArrayList<Attribute>(size);
+        for (int i = 0; i < size; i++)
+            list.add(new Attribute(keys[i], value(i), this));
         return Collections.unmodifiableList(list);
     }
 
@@ -140,60 +235,70 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
     }
     
     void html(StringBuilder accum, Document.OutputSettings out) {
-        if (attributes == null)
-            return;
-        
-        for (Map.Entry<String, Attribute> entry : attributes.entrySet()) {
-            Attribute attribute = entry.getValue();
+        for (int i = 0; i < size; i++) {
             accum.append(" ");
-            attribute.html(accum, out);
+            Attribute.html(keys[i], value(i), accum, out);
         }
     }
     
     public String toString() {
         return html();
     }
-    
+
+    /**
+     Checks if these attributes are equal to another set of attributes, by comparing their keys and values. The order
+     of the attributes is not compared.
+     @param o attributes to compare with
+     @return if both sets of attributes have the same content
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Attributes)) return false;
         
         Attributes that = (Attributes) o;
-        
-        if (attributes != null ? !attributes.equals(that.attributes) : that.attributes != null) return false;
-        
+        if (size != that.size) return false;
+        for (int i = 0; i < size; i++) {
+            int thatI = that.indexOfKey(keys[i]);
+            if (thatI == NotFound || !value(i).equals(that.value(thatI)))
+                return false;
+        }
         return true;
     }
     
     @Override
     public int hashCode() {
-        return attributes != null ? attributes.hashCode() : 0;
+        int result = 0; // order independent, as in equals
+        for (int i = 0; i < size; i++)
+            result += keys[i].hashCode() ^ value(i).hashCode();
+        return result;
     }
 
     @Override
     public Attributes clone() {
-        if (attributes == null)
-            return new Attributes();
-
         Attributes clone;
         try {
             clone = (Attributes) super.clone();
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
-        clone.attributes = new LinkedHashMap<String, Attribute>(attributes.size());
-        for (Attribute attribute: this)
-            clone.attributes.put(attribute.getKey(), attribute.clone());
+        clone.owner = null;
+        if (size == 0) {
+            clone.keys = null;
+            clone.vals = null;
+            return clone;
+        }
+        clone.keys = new String[size];
+        clone.vals = new Object[size];
+        System.arraycopy(keys, 0, clone.keys, 0, size);
+        for (int i = 0; i < size; i++)
+            clone.vals[i] = clone.copyOf(vals[i]);
         return clone;
     }
 
     private class Dataset extends AbstractMap<String, String> {
 
-        private Dataset() {
-            if (attributes == null)
-                attributes = new LinkedHashMap<String, Attribute>(2);
-        }
+        private Dataset() {}
 
         public Set<Entry<String, String>> entrySet() {
             return new EntrySet();
@@ -202,9 +307,8 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
         @Override
         public String put(String key, String value) {
             String dataKey = dataKey(key);
-            String oldValue = hasKey(dataKey) ? attributes.get(dataKey).getValue() : null;
-            Attribute attr = new Attribute(dataKey, value);
-            attributes.put(dataKey, attr);
+            String oldValue = hasKey(dataKey) ? Attributes.this.get(dataKey) : null;
+            Attributes.this.put(dataKey, value);
             return oldValue;
         }
 
@@ -215,30 +319,37 @@ public class Attributes implements Iterable<Attribute>, Cloneable {
 
             public int size() {
                 int count = 0;
-                Iterator iter = new DatasetIterator();
-                while (iter.hasNext())
-                    count++;
+                for (int i = 0; i < Attributes.this.size; i++) {
+                    if (Attribute.isDataAttribute(keys[i]))
+                        count++;
+                }
                 return count;
             }
         }
 
         private class DatasetIterator implements Iterator<Map.Entry<String, String>> {
-            private Iterator<Attribute> attrIter = attributes.values().iterator();
-            private Attribute attr;
+            private int next = 0; // index of the next data attribute, once found by hasNext
+            private int last = NotFound; // index of the attribute last returned, for remove
+
             public boolean hasNext() {
-                while (attrIter.hasNext()) {
-                    attr = attrIter.next();
-                    if (attr.isDataAttribute()) return true;
-                }
-                return false;
+                while (next < size && !Attribute.isDataAttribute(keys[next]))
+                    next++;
+                return next < size;
             }
 
             public Entry<String, String> next() {
-                return new Attribute(attr.getKey().substring(dataPrefix.length()), attr.getValue());
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                last = next++;
+                return new Attribute(keys[last].substring(dataPrefix.length()), value(last));
             }
 
             public void remove() {
-                attributes.remove(attr.getKey());
+                if (last == NotFound)
+                    throw new IllegalStateException();
+                Attributes.this.remove(last);
+                next = last;
+                last = NotFound;
             }
         }
     }
@@ -3,12 +3,20 @@ package org.jsoup.nodes;
 import org.jsoup.helper.StringUtil;
 import org.jsoup.helper.Validate;
 import org.jsoup.parser.Tag;
+import org.jsoup.select.Collector;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  A HTML Document.
@@ -18,6 +26,9 @@ public class Document extends Element {
     private OutputSettings outputSettings = new OutputSettings();
     private QuirksMode quirksMode = QuirksMode.noQuirks;
     private String location;
+    private boolean indexIds = false;
+    private Map<String, Element> ids; // id to the only element with that id. built on first lookup when indexing ids
+    private Set<String> unresolvedIds; // ids that may be on more than one element; found by a search when looked up
 
     /**
      Create a new, empty Document.
@@ -211,9 +222,161 @@ public class Document extends Element {
     public Document clone() {
         Document clone = (Document) super.clone();
         clone.outputSettings = this.outputSettings.clone();
+        clone.ids = null; // rebuilt on the clone's first lookup
+        clone.unresolvedIds = null;
         return clone;
     }
 
+    /**
+     * Get if this document indexes element IDs, for {@link #getElementById(String)}.
+     * @return if indexing IDs. Default is false.
+     */
+    public boolean indexIds() {
+        return indexIds;
+    }
+
+    /**
+     * Set if this document indexes element IDs. When indexing, {@link #getElementById(String)} and {@code #id} selects
+     * on the document find the element in the index, rather than searching the whole document.
+     * <p>
+     * The index is built on the first lookup, and is then kept up to date as nodes are added, removed and replaced, and
+     * as IDs are set and removed in elements' {@link #attributes()}. As the first lookup changes the document, it must
+     * not be made from more than one thread at once. While the index is built, changes to the document's elements
+     * look up to the document to update it; set indexing off when no longer needed.
+     * </p>
+     * @param indexIds if the document should index element IDs
+     * @return this document, for chaining
+     */
+    public Document indexIds(boolean indexIds) {
+        this.indexIds = indexIds;
+        if (!indexIds && ids != null) {
+            updateIdIndex(this, false); // unmarks the elements, so their changes no longer look for the index
+            ids = null;
+            unresolvedIds = null;
+        }
+        return this;
+    }
+
+    /**
+     * Find an element by ID. If this document is {@link #indexIds() indexing IDs}, the element is found in the index.
+     * @param id The ID to search for.
+     * @return The first matching element by ID, or null if none found.
+     */
+    @Override
+    public Element getElementById(String id) {
+        if (!indexIds)
+            return super.getElementById(id);
+
+        Validate.notEmpty(id);
+        Element found = indexedElement(id);
+        if (found != null || !unresolvedIds.contains(id))
+            return found;
+        Elements elements = searchIds(id);
+        return elements.size() > 0 ? elements.get(0) : null;
+    }
+
+    /**
+     * Find all elements with an ID. There should be at most one, but a document may have the same ID on more than one
+     * element. If this document is {@link #indexIds() indexing IDs}, an ID on only one element is found in the index.
+     * @param id The ID to search for.
+     * @return elements with this ID, in document order; empty if none.
+     */
+    public Elements getElementsById(String id) {
+        Validate.notEmpty(id);
+        if (!indexIds)
+            return Collector.collect(new Evaluator.Id(id), this);
+
+        Element found = indexedElement(id);
+        if (found != null)
+            return new Elements(found);
+        return unresolvedIds.contains(id) ? searchIds(id) : new Elements();
+    }
+
+    // finds the element if its id is on just it; null if on none, or unresolved
+    private Element indexedElement(String id) {
+        if (ids == null) {
+            ids = new HashMap<String, Element>();
+            unresolvedIds = new HashSet<String>();
+            updateIdIndex(this, true);
+        }
+        if (unresolvedIds.contains(id))
+            return null;
+        Element found = ids.get(id);
+        if (found != null && !id.equals(found.id())) { // changed without the index seeing, e.g. in shared attributes
+            ids.remove(id);
+            unresolvedIds.add(id);
+            return null;
+        }
+        return found;
+    }
+
+    // searches the document for an unresolved id, and indexes it if now on one or no element
+    private Elements searchIds(String id) {
+        Elements elements = Collector.collect(new Evaluator.Id(id), this);
+        if (elements.size() <= 1) {
+            unresolvedIds.remove(id);
+            if (elements.size() == 1)
+                ids.put(id, elements.get(0));
+        }
+        return elements;
+    }
+
+    /**
+     * Updates the ID index, if built, for a node (and its descendants) added to or removed from this document. Elements
+     * in the index are marked {@link Node#inIdIndex}, so that changes to them look up to the document.
+     */
+    void updateIdIndex(Node node, final boolean added) {
+        if (ids == null)
+            return;
+        new NodeTraversor(new NodeVisitor() {
+            public void head(Node node, int depth) {
+                if (node instanceof Element) {
+                    node.inIdIndex = added;
+                    String id = node.attributes.get("id");
+                    if (id.length() > 0) {
+                        if (added)
+                            indexId(id, (Element) node);
+                        else
+                            unindexId(id, (Element) node);
+                    }
+                }
+            }
+
+            public void tail(Node node, int depth) {}
+        }).traverse(node);
+    }
+
+    /**
+     * Updates the ID index, if built, for an element in this document that has had its ID changed.
+     */
+    void updateIdIndex(Element element, String oldId, String newId) {
+        if (ids == null || oldId.equals(newId))
+            return;
+        if (oldId.length() > 0)
+            unindexId(oldId, element);
+        if (newId.length() > 0)
+            indexId(newId, element);
+    }
+
+    private void indexId(String id, Element element) {
+        if (unresolvedIds.contains(id))
+            return;
+        Element indexed = ids.get(id);
+        if (indexed == null) {
+            ids.put(id, element);
+        } else if (indexed != element) { // now on more than one element
+            ids.remove(id);
+            unresolvedIds.add(id);
+        }
+    }
+
+    private void unindexId(String id, Element element) {
+        if (ids.get(id) == element)
+            ids.remove(id); // it was the only element with the id
+        else
+            unresolvedIds.add(id); // may still be on others
+    }
+
     /**
      * A Document's output settings control the form of the text() and html() methods.
      */
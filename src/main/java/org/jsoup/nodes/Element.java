@@ -21,6 +21,13 @@ import java.util.regex.PatternSyntaxException;
 public class Element extends Node {
     private Tag tag;
     private Set<String> classNames;
+    private static final int NotInClass = -1;
+    private int elementIndex; // index in the parent's element children; valid when the parent's children are indexed
+    private int childElementCount = NotIndexed; // count of element children, once indexed; reset when children change
+    private static final int NotIndexed = -1;
+    private int typeIndex; // index in the parent's element children of the same tag; valid when its types are indexed
+    private int typeCount; // count of the parent's element children of the same tag, likewise
+    private boolean childTypesIndexed; // if the children's type index and count are set; reset when children change
     
     /**
      * Create a new, standalone Element. (Standalone in that is has no parent.)
@@ -74,6 +81,9 @@ public class Element extends Node {
     public Element tagName(String tagName) {
         Validate.notEmpty(tagName, "Tag name must not be empty.");
         tag = Tag.valueOf(tagName);
+        Element parent = parent();
+        if (parent != null)
+            parent.childTypesIndexed = false; // this may now count as another type
         return this;
     }
 
@@ -189,6 +199,57 @@ public class Element extends Node {
         return new Elements(elements);
     }
 
+    /**
+     * Get the number of child elements of this element, without creating the {@link #children()} list.
+     * @return the number of child elements
+     */
+    public int childrenSize() {
+        indexChildren();
+        return childElementCount;
+    }
+
+    // sets the element index of each element child, if the children have changed since they were last indexed
+    private void indexChildren() {
+        if (childElementCount != NotIndexed)
+            return;
+        int count = 0;
+        for (int i = 0; i < childNodes.size(); i++) {
+            Node node = childNodes.get(i);
+            if (node instanceof Element)
+                ((Element) node).elementIndex = count++;
+        }
+        childElementCount = count;
+    }
+
+    // sets the type index and count of each element child, if the children have changed since they were last indexed
+    private void indexChildTypes() {
+        if (childTypesIndexed)
+            return;
+        Map<Tag, int[]> counts = new HashMap<Tag, int[]>();
+        for (int i = 0; i < childNodes.size(); i++) {
+            Node node = childNodes.get(i);
+            if (node instanceof Element) {
+                Element el = (Element) node;
+                int[] count = counts.get(el.tag);
+                if (count == null)
+                    counts.put(el.tag, count = new int[1]);
+                el.typeIndex = count[0]++;
+            }
+        }
+        for (int i = 0; i < childNodes.size(); i++) {
+            Node node = childNodes.get(i);
+            if (node instanceof Element)
+                ((Element) node).typeCount = counts.get(((Element) node).tag)[0];
+        }
+        childTypesIndexed = true;
+    }
+
+    @Override
+    void nodelistChanged() {
+        childElementCount = NotIndexed;
+        childTypesIndexed = false;
+    }
+
     /**
      * Get this element's child text nodes. The list is unmodifiable but the text nodes may be manipulated.
      * <p/>
@@ -429,7 +490,13 @@ public class Element extends Node {
      * @return this element
      */
     public Element empty() {
-        childNodes.clear();
+        if (childNodes != EMPTY_NODES) {
+            for (int i = 0; i < childNodes.size(); i++)
+                childIdsChanged(childNodes.get(i), false);
+            childNodes.clear();
+            indexedChildren = 0;
+            nodelistChanged();
+        }
         return this;
     }
 
@@ -471,13 +538,13 @@ public class Element extends Node {
      */
     public Element nextElementSibling() {
         if (parentNode == null) return null;
-        List<Element> siblings = parent().children();
-        Integer index = indexInList(this, siblings);
-        Validate.notNull(index);
-        if (siblings.size() > index+1)
-            return siblings.get(index+1);
-        else
-            return null;
+        List<Node> siblings = parentNode.childNodes;
+        for (int i = siblingIndex() + 1; i < siblings.size(); i++) {
+            Node sibling = siblings.get(i);
+            if (sibling instanceof Element)
+                return (Element) sibling;
+        }
+        return null;
     }
 
     /**
@@ -487,13 +554,13 @@ public class Element extends Node {
      */
     public Element previousElementSibling() {
         if (parentNode == null) return null;
-        List<Element> siblings = parent().children();
-        Integer index = indexInList(this, siblings);
-        Validate.notNull(index);
-        if (index > 0)
-            return siblings.get(index-1);
-        else
-            return null;
+        List<Node> siblings = parentNode.childNodes;
+        for (int i = siblingIndex() - 1; i >= 0; i--) {
+            Node sibling = siblings.get(i);
+            if (sibling instanceof Element)
+                return (Element) sibling;
+        }
+        return null;
     }
 
     /**
@@ -502,18 +569,60 @@ public class Element extends Node {
      */
     public Element firstElementSibling() {
         // todo: should firstSibling() exclude this?
-        List<Element> siblings = parent().children();
-        return siblings.size() > 1 ? siblings.get(0) : null;
+        Element parent = parent();
+        if (parent.childrenSize() <= 1)
+            return null;
+        List<Node> siblings = parentNode.childNodes;
+        for (int i = 0; ; i++) {
+            Node sibling = siblings.get(i);
+            if (sibling instanceof Element)
+                return (Element) sibling;
+        }
     }
     
     /**
      * Get the list index of this element in its element sibling list. I.e. if this is the first element
      * sibling, returns 0.
      * @return position in element sibling list
+     * @see #elementIndex()
      */
     public Integer elementSiblingIndex() {
-       if (parent() == null) return 0;
-       return indexInList(this, parent().children()); 
+        return elementIndex();
+    }
+
+    /**
+     * Get the index of this element in its element sibling list, as {@link #elementSiblingIndex()} does, but without
+     * boxing it.
+     * @return position in element sibling list; 0 if this element has no parent
+     */
+    public int elementIndex() {
+        Element parent = parent();
+        if (parent == null) return 0;
+        parent.indexChildren();
+        return elementIndex;
+    }
+
+    /**
+     * Get the index of this element among its element siblings with the same tag, as the {@code :nth-of-type} selector
+     * counts them. I.e. if this is the first {@code p} sibling, returns 0.
+     * @return position among element siblings of this tag; 0 if this element has no parent
+     */
+    public int elementTypeIndex() {
+        Element parent = parent();
+        if (parent == null) return 0;
+        parent.indexChildTypes();
+        return typeIndex;
+    }
+
+    /**
+     * Get the number of element siblings with the same tag as this element, including this element.
+     * @return count of element siblings of this tag; 1 if this element has no parent
+     */
+    public int elementTypeCount() {
+        Element parent = parent();
+        if (parent == null) return 1;
+        parent.indexChildTypes();
+        return typeCount;
     }
 
     /**
@@ -521,20 +630,15 @@ public class Element extends Node {
      * @return the last sibling that is an element (aka the parent's last element child) 
      */
     public Element lastElementSibling() {
-        List<Element> siblings = parent().children();
-        return siblings.size() > 1 ? siblings.get(siblings.size() - 1) : null;
-    }
-    
-    private static <E extends Element> Integer indexInList(Element search, List<E> elements) {
-        Validate.notNull(search);
-        Validate.notNull(elements);
-
-        for (int i = 0; i < elements.size(); i++) {
-            E element = elements.get(i);
-            if (element.equals(search))
-                return i;
+        Element parent = parent();
+        if (parent.childrenSize() <= 1)
+            return null;
+        List<Node> siblings = parentNode.childNodes;
+        for (int i = siblings.size() - 1; ; i--) {
+            Node sibling = siblings.get(i);
+            if (sibling instanceof Element)
+                return (Element) sibling;
         }
-        return null;
     }
 
     // DOM type methods
@@ -961,8 +1065,18 @@ public class Element extends Node {
      */
     public Set<String> classNames() {
         if (classNames == null) {
-            String[] names = className().split("\\s+");
-            classNames = new LinkedHashSet<String>(Arrays.asList(names));
+            String classAttr = className();
+            classNames = new LinkedHashSet<String>();
+            int start = NotInClass;
+            for (int i = 0; i <= classAttr.length(); i++) {
+                if (i == classAttr.length() || StringUtil.isWhitespace(classAttr.charAt(i))) {
+                    if (start != NotInClass)
+                        classNames.add(classAttr.substring(start, i));
+                    start = NotInClass;
+                } else if (start == NotInClass) {
+                    start = i;
+                }
+            }
         }
         return classNames;
     }
@@ -984,10 +1098,24 @@ public class Element extends Node {
      * @return true if it does, false if not
      */
     public boolean hasClass(String className) {
-        Set<String> classNames = classNames();
-        for (String name : classNames) {
-            if (className.equalsIgnoreCase(name))
-                return true;
+        // scans the class attribute in place, rather than splitting it into classNames(), as this is hit by every
+        // element in a class selector
+        String classAttr = attributes.get("class");
+        int len = classAttr.length();
+        int wanted = className.length();
+        if (wanted == 0 || len < wanted)
+            return false;
+
+        int start = NotInClass;
+        for (int i = 0; i <= len; i++) {
+            if (i == len || StringUtil.isWhitespace(classAttr.charAt(i))) {
+                if (start != NotInClass && i - start == wanted
+                        && classAttr.regionMatches(true, start, className, 0, wanted))
+                    return true;
+                start = NotInClass;
+            } else if (start == NotInClass) {
+                start = i;
+            }
         }
         return false;
     }
@@ -9,6 +9,7 @@ import org.jsoup.select.NodeVisitor;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -18,11 +19,14 @@ import java.util.List;
 
  @author Jonathan Hedley, jonathan@hedley.net */
 public abstract class Node implements Cloneable {
+    static final List<Node> EMPTY_NODES = Collections.unmodifiableList(new ArrayList<Node>(0)); // until a child is added
     Node parentNode;
     List<Node> childNodes;
     Attributes attributes;
     String baseUri;
-    int siblingIndex;
+    int siblingIndex; // may be stale once earlier siblings are added or removed; read via siblingIndex()
+    int indexedChildren; // the count of leading children known to have a correct siblingIndex. the rest are reindexed when read
+    boolean inIdIndex; // an element in a document with a built id index; changes to its children or id update the index
 
     /**
      Create a new Node.
@@ -33,9 +37,10 @@ public abstract class Node implements Cloneable {
         Validate.notNull(baseUri);
         Validate.notNull(attributes);
         
-        childNodes = new ArrayList<Node>(4);
+        childNodes = EMPTY_NODES; // the list is created when needed, as many nodes never have children
         this.baseUri = baseUri.trim();
         this.attributes = attributes;
+        attributes.owner = this;
     }
 
     protected Node(String baseUri) {
@@ -124,6 +129,15 @@ public abstract class Node implements Cloneable {
         return this;
     }
 
+    // tells the owner document's id index, if any, that this element's id has changed in its attributes
+    void idChanged(String oldId) {
+        if (!(this instanceof Element))
+            return;
+        Document doc = ownerDocument();
+        if (doc != null)
+            doc.updateIdIndex((Element) this, oldId, attributes.get("id"));
+    }
+
     /**
      Get the base URI of this node.
      @return base URI
@@ -260,12 +274,10 @@ public abstract class Node implements Cloneable {
      * @return the Document associated with this Node, or null if there is no such Document.
      */
     public Document ownerDocument() {
-        if (this instanceof Document)
-            return (Document) this;
-        else if (parentNode == null)
-            return null;
-        else
-            return parentNode.ownerDocument();
+        Node root = this;
+        while (root.parentNode != null)
+            root = root.parentNode;
+        return root instanceof Document ? (Document) root : null;
     }
     
     /**
@@ -381,7 +393,7 @@ public abstract class Node implements Cloneable {
     public Node unwrap() {
         Validate.notNull(parentNode);
 
-        int index = siblingIndex;
+        int index = siblingIndex();
         Node firstChild = childNodes.size() > 0 ? childNodes.get(0) : null;
         parentNode.addChildren(index, this.childNodesAsArray());
         this.remove();
@@ -424,33 +436,81 @@ public abstract class Node implements Cloneable {
         in.parentNode = this;
         in.setSiblingIndex(index);
         out.parentNode = null;
+        nodelistChanged();
+        childIdsChanged(out, false);
+        childIdsChanged(in, true);
     }
 
     protected void removeChild(Node out) {
         Validate.isTrue(out.parentNode == this);
         int index = out.siblingIndex();
         childNodes.remove(index);
-        reindexChildren();
+        indexedChildren = Math.min(indexedChildren, index); // later siblings are reindexed when next read
         out.parentNode = null;
+        nodelistChanged();
+        childIdsChanged(out, false);
+    }
+
+    /**
+     * Remove a set of this node's children, in one pass over the child nodes; so removing many children is linear
+     * rather than quadratic, as removing each in turn would be.
+     * @param children the child nodes to remove. Each must be a child of this node.
+     * @see #remove()
+     */
+    public void removeChildren(Collection<? extends Node> children) {
+        Validate.notNull(children);
+        Node[] removed = children.toArray(new Node[children.size()]); // children may be a view of childNodes
+        for (Node child : removed)
+            Validate.isTrue(child.parentNode == this, "Must be a child of this node");
+        for (Node child : removed)
+            child.parentNode = null; // marks for removal
+
+        int kept = 0;
+        for (int i = 0; i < childNodes.size(); i++) {
+            Node node = childNodes.get(i);
+            if (node.parentNode == this) {
+                childNodes.set(kept, node);
+                node.setSiblingIndex(kept);
+                kept++;
+            }
+        }
+        childNodes.subList(kept, childNodes.size()).clear();
+        indexedChildren = kept;
+        nodelistChanged();
+        for (Node child : removed)
+            childIdsChanged(child, false);
     }
 
     protected void addChildren(Node... children) {
-        //most used. short circuit addChildren(int), which hits reindex children and array copy
+        //most used. short circuit addChildren(int), which hits array copy
+        ensureChildNodes();
         for (Node child: children) {
             reparentChild(child);
             childNodes.add(child);
             child.setSiblingIndex(childNodes.size()-1);
+            if (indexedChildren == childNodes.size()-1)
+                indexedChildren++;
+            childIdsChanged(child, true);
         }
+        nodelistChanged();
     }
 
     protected void addChildren(int index, Node... children) {
         Validate.noNullElements(children);
+        ensureChildNodes();
         for (int i = children.length - 1; i >= 0; i--) {
             Node in = children[i];
             reparentChild(in);
             childNodes.add(index, in);
+            childIdsChanged(in, true);
         }
-        reindexChildren();
+        indexedChildren = Math.min(indexedChildren, index); // reindexed when next read
+        nodelistChanged();
+    }
+
+    private void ensureChildNodes() {
+        if (childNodes == EMPTY_NODES)
+            childNodes = new ArrayList<Node>(4);
     }
 
     private void reparentChild(Node child) {
@@ -459,9 +519,36 @@ public abstract class Node implements Cloneable {
         child.setParentNode(this);
     }
     
-    private void reindexChildren() {
-        for (int i = 0; i < childNodes.size(); i++) {
-            childNodes.get(i).setSiblingIndex(i);
+    /**
+     * Tells the owner document's ID index, if any, that a child was added or removed. Unless this node is in a document
+     * with a built index, this doesn't walk up to the document; nor for nodes that can't hold IDs.
+     */
+    void childIdsChanged(Node child, boolean added) {
+        if (inIdIndex && child instanceof Element) {
+            Document doc = ownerDocument();
+            if (doc != null)
+                doc.updateIdIndex(child, added);
+        }
+    }
+
+    /**
+     * Called after the child node list has changed, so that anything derived from it can be reset.
+     */
+    void nodelistChanged() {
+        // no derived state in Node
+    }
+
+    // reindexes the children after the known good indexes, up to the child, if its index may be stale
+    private void reindexChildren(Node child) {
+        int index = child.siblingIndex;
+        if (index < indexedChildren && childNodes.get(index) == child)
+            return;
+        for (int i = indexedChildren; i < childNodes.size(); i++) {
+            Node node = childNodes.get(i);
+            node.setSiblingIndex(i);
+            indexedChildren = i + 1;
+            if (node == child)
+                return;
         }
     }
     
@@ -523,6 +610,8 @@ public abstract class Node implements Cloneable {
      * @see org.jsoup.nodes.Element#elementSiblingIndex()
      */
     public int siblingIndex() {
+        if (parentNode != null)
+            parentNode.reindexChildren(this);
         return siblingIndex;
     }
     
@@ -635,13 +724,20 @@ public abstract class Node implements Cloneable {
         }
 
         clone.parentNode = parent; // can be null, to create an orphan split
+        clone.inIdIndex = false; // in no document's index until added to one
         clone.siblingIndex = parent == null ? 0 : siblingIndex;
-        clone.attributes = attributes != null ? attributes.clone() : null;
+        if (attributes != null) {
+            clone.attributes = attributes.clone();
+            clone.attributes.owner = clone;
+        }
         clone.baseUri = baseUri;
-        clone.childNodes = new ArrayList<Node>(childNodes.size());
-
-        for (Node child: childNodes)
-            clone.childNodes.add(child);
+        if (childNodes == EMPTY_NODES) {
+            clone.childNodes = EMPTY_NODES;
+        } else {
+            clone.childNodes = new ArrayList<Node>(childNodes.size());
+            for (Node child: childNodes)
+                clone.childNodes.add(child);
+        }
 
         return clone;
     }
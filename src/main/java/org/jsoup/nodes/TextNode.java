@@ -14,7 +14,7 @@ public class TextNode extends Node {
     them as needed on the fly.
      */
     private static final String TEXT_KEY = "text";
-    String text;
+    CharSequence text; // a String; or a view of the parsed input, in shared source text mode
 
     /**
      Create a new TextNode representing the supplied (unencoded) text).
@@ -28,6 +28,20 @@ public class TextNode extends Node {
         this.text = text;
     }
 
+    /**
+     Create a new TextNode that holds the supplied text as is, rather than as a String. Its text is copied out of the
+     sequence each time it is read, until it is set. Used by the parser's shared source text mode, to hold views of
+     the input.
+
+     @param text raw text. Must not be changed once the node is created.
+     @param baseUri base uri
+     @see org.jsoup.parser.Parser#setSharedSourceText(boolean)
+     */
+    public TextNode(CharSequence text, String baseUri) {
+        this.baseUri = baseUri;
+        this.text = text;
+    }
+
     public String nodeName() {
         return "#text";
     }
@@ -58,7 +72,7 @@ public class TextNode extends Node {
      @return text
      */
     public String getWholeText() {
-        return attributes == null ? text : attributes.get(TEXT_KEY);
+        return attributes == null ? text.toString() : attributes.get(TEXT_KEY);
     }
 
     /**
@@ -90,12 +104,13 @@ public class TextNode extends Node {
     }
 
     void outerHtmlHead(StringBuilder accum, int depth, Document.OutputSettings out) {
-        if (out.prettyPrint() && ((siblingIndex() == 0 && parentNode instanceof Element && ((Element) parentNode).tag().formatAsBlock() && !isBlank()) || (out.outline() && siblingNodes().size()>0 && !isBlank()) ))
+        String text = getWholeText(); // read once, as a view's text is copied on each read
+        if (out.prettyPrint() && ((siblingIndex() == 0 && parentNode instanceof Element && ((Element) parentNode).tag().formatAsBlock() && !StringUtil.isBlank(text)) || (out.outline() && siblingNodes().size()>0 && !StringUtil.isBlank(text)) ))
             indent(accum, depth, out);
 
         boolean normaliseWhite = out.prettyPrint() && parent() instanceof Element
                 && !Element.preserveWhitespace((Element) parent());
-        Entities.escape(accum, getWholeText(), out, false, normaliseWhite, false);
+        Entities.escape(accum, text, out, false, normaliseWhite, false);
     }
 
     void outerHtmlTail(StringBuilder accum, int depth, Document.OutputSettings out) {}
@@ -131,7 +146,7 @@ public class TextNode extends Node {
     private void ensureAttributes() {
         if (attributes == null) {
             attributes = new Attributes();
-            attributes.put(TEXT_KEY, text);
+            attributes.put(TEXT_KEY, text.toString());
         }
     }
 
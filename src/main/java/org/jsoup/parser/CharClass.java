@@ -0,0 +1,60 @@
+package org.jsoup.parser;
+
+import org.jsoup.helper.Validate;
+
+/**
+ * A set of ASCII chars, held as a lookup table, so the CharacterReader can test each char of a run with one indexed
+ * load rather than comparing it against a list of chars. Chars outside ASCII are never members.
+ */
+final class CharClass {
+    private static final int size = 128;
+
+    static final CharClass letters = new CharClass().range('a', 'z').range('A', 'Z');
+    static final CharClass digits = new CharClass().range('0', '9');
+    static final CharClass hexDigits = new CharClass().range('0', '9').range('a', 'f').range('A', 'F');
+
+    private final boolean[] members = new boolean[size];
+
+    private CharClass() {}
+
+    /**
+     * Create a class of the given chars.
+     * @param chars ASCII chars
+     * @return the class
+     */
+    static CharClass anyOf(char... chars) {
+        CharClass charClass = new CharClass();
+        for (char c : chars) {
+            Validate.isTrue(c < size, "Char classes only hold ASCII chars");
+            charClass.members[c] = true;
+        }
+        return charClass;
+    }
+
+    /**
+     * Create a class of the chars in this class and in another.
+     * @param other other class
+     * @return the union of the classes; neither is modified
+     */
+    CharClass with(CharClass other) {
+        CharClass charClass = new CharClass();
+        for (int i = 0; i < size; i++)
+            charClass.members[i] = members[i] || other.members[i];
+        return charClass;
+    }
+
+    private CharClass range(char from, char to) {
+        for (char c = from; c <= to; c++)
+            members[c] = true;
+        return this;
+    }
+
+    /**
+     * Test if the char is in this class.
+     * @param c char to test
+     * @return true if a member
+     */
+    boolean contains(char c) {
+        return c < size && members[c];
+    }
+}
@@ -1,62 +1,223 @@
 package org.jsoup.parser;
 
+import org.jsoup.UncheckedIOException;
 import org.jsoup.helper.Validate;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Locale;
 
 /**
- CharacterReader consumes tokens off a string. To replace the old TokenQueue.
+ CharacterReader consumes tokens off a string, or off a {@link Reader} through a bounded sliding buffer. To replace the
+ old TokenQueue.
  */
 class CharacterReader {
     static final char EOF = (char) -1;
-
-    private final char[] input;
-    private final int length;
-    private int pos = 0;
-    private int mark = 0;
+    static final int maxBufferLen = 1024 * 32; // default window size when reading from a Reader
+    private static final int readAheadLimit = (int) (maxBufferLen * 0.75); // chars guaranteed ahead of pos after a buffer up
+    private static final int maxRetainedBufferLen = 1024 * 1024; // larger buffers aren't kept for reuse on reset
+
+    private char[] charBuf; // the window onto the input. when read from a string, the whole input
+    private Reader reader; // null when the input is fully buffered
+    private int bufLength; // count of valid chars in charBuf
+    private int bufSplitPoint; // once pos passes this, the buffer is slid along and refilled
+    private int bufPos; // current position in charBuf
+    private int readerPos; // offset of charBuf[0] from the start of the input
+    private int bufMark = -1;
+    private boolean readFully; // if the whole input has been read into the buffer
+    private boolean bufferShared; // if charBuf has been handed to a document, so must not be reused
+    private String containsSeq; // the last sequence checked by containsIgnoreCase,
+    private int containsFrom; // the input position it was checked from,
+    private int containsAt; // and the position it was next found at; -1 if not in the rest of the input
 
     CharacterReader(String input) {
+        reset(input);
+    }
+
+    CharacterReader(Reader input) {
+        this(input, maxBufferLen);
+    }
+
+    CharacterReader(Reader input, int sz) {
+        Validate.notNull(input);
+        Validate.isTrue(sz > 1, "Buffer size must be greater than 1");
+        charBuf = new char[sz];
+        read(input);
+    }
+
+    /**
+     * Reset this reader to read a new input, reusing its buffer if that is large enough (and not overly large).
+     * @param input string to read
+     */
+    void reset(String input) {
+        Validate.notNull(input);
+        int len = input.length();
+        if (charBuf == null || bufferShared || charBuf.length < len || charBuf.length > maxRetainedBufferLen)
+            charBuf = new char[len];
+        bufferShared = false;
+        input.getChars(0, len, charBuf, 0);
+        reader = null;
+        bufLength = len;
+        bufSplitPoint = len;
+        readFully = true;
+        resetPositions();
+    }
+
+    /**
+     * Reset this reader to read a new input, reusing its buffer if it has not grown overly large.
+     * @param input Reader to read from; read through a sliding buffer, and not closed
+     */
+    void reset(Reader input) {
         Validate.notNull(input);
-        this.input = input.toCharArray();
-        this.length = this.input.length;
+        if (bufferShared || charBuf.length < maxBufferLen || charBuf.length > maxRetainedBufferLen)
+            charBuf = new char[maxBufferLen];
+        bufferShared = false;
+        read(input);
+    }
+
+    private void read(Reader input) {
+        reader = input;
+        bufLength = 0;
+        bufSplitPoint = 0;
+        readFully = false;
+        resetPositions();
+        bufferUp();
+    }
+
+    private void resetPositions() {
+        bufPos = 0;
+        readerPos = 0;
+        bufMark = -1;
+        containsSeq = null;
+        containsFrom = 0;
+        containsAt = 0;
+    }
+
+    /**
+     * Share the buffer of the whole input, so that runs of it can be viewed in place (see {@link SourceText}). The
+     * buffer is not changed by this reader from then on; if it is reset, a new buffer is used.
+     * @return the input, in a buffer of exactly its length; null if the input is not all buffered
+     */
+    char[] shareBuffer() {
+        if (!readFully || readerPos != 0)
+            return null;
+        if (charBuf.length != bufLength) {
+            char[] buf = new char[bufLength];
+            System.arraycopy(charBuf, 0, buf, 0, bufLength);
+            charBuf = buf;
+        }
+        bufferShared = true;
+        return charBuf;
     }
 
     int pos() {
-        return pos;
+        return readerPos + bufPos;
     }
 
     boolean isEmpty() {
-        return pos >= length;
+        bufferUp();
+        return bufPos >= bufLength;
     }
 
     char current() {
-        return pos >= length ? EOF : input[pos];
+        bufferUp();
+        return bufPos >= bufLength ? EOF : charBuf[bufPos];
     }
 
     char consume() {
-        char val = pos >= length ? EOF : input[pos];
-        pos++;
+        bufferUp();
+        char val = bufPos >= bufLength ? EOF : charBuf[bufPos];
+        bufPos++;
         return val;
     }
 
     void unconsume() {
-        pos--;
+        bufPos--;
     }
 
     void advance() {
-        pos++;
+        bufPos++;
     }
 
     void mark() {
-        mark = pos;
+        bufMark = bufPos;
+    }
+
+    void unmark() {
+        bufMark = -1;
     }
 
     void rewindToMark() {
-        pos = mark;
+        Validate.isTrue(bufMark != -1, "Mark invalid");
+        bufPos = bufMark;
+        unmark();
     }
 
     String consumeAsString() {
-        return new String(input, pos++, 1);
+        bufferUp();
+        return new String(charBuf, bufPos++, 1);
+    }
+
+    /**
+     * Slides the buffer along and refills it from the reader, once the current position has passed the split point.
+     * Keeps the char before the current position (for unconsume), and anything from the mark.
+     */
+    private void bufferUp() {
+        if (readFully || bufPos < bufSplitPoint)
+            return;
+        fill();
+    }
+
+    /**
+     * Reads more input onto the end of the buffer, whether or not the split point has been reached. Used by scans that
+     * run off the end of the window.
+     * @return true if more input was read; false if at the end of the input.
+     */
+    private boolean readAhead() {
+        if (readFully)
+            return false;
+        int before = readerPos + bufLength;
+        fill();
+        return readerPos + bufLength > before;
+    }
+
+    private void fill() {
+        int keep = bufPos > 0 ? bufPos - 1 : 0;
+        if (bufMark != -1 && bufMark < keep)
+            keep = bufMark;
+        if (keep > 0) {
+            System.arraycopy(charBuf, keep, charBuf, 0, bufLength - keep);
+            readerPos += keep;
+            bufLength -= keep;
+            bufPos -= keep;
+            if (bufMark != -1)
+                bufMark -= keep;
+        }
+        if (bufLength == charBuf.length || charBuf.length - bufPos < readAheadLimit(charBuf.length)) {
+            // pinned by the mark, or a scan needs to look further than the window: grow rather than drop input
+            char[] grown = new char[charBuf.length * 2];
+            System.arraycopy(charBuf, 0, grown, 0, bufLength);
+            charBuf = grown;
+        }
+
+        try {
+            while (bufLength < charBuf.length) {
+                int read = reader.read(charBuf, bufLength, charBuf.length - bufLength);
+                if (read == -1) {
+                    readFully = true;
+                    reader = null; // all buffered; don't hold it past the parse
+                    break;
+                }
+                bufLength += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bufSplitPoint = readFully ? bufLength : bufLength - readAheadLimit(charBuf.length);
+    }
+
+    private static int readAheadLimit(int bufSize) {
+        return bufSize >= maxBufferLen ? readAheadLimit : (int) (bufSize * 0.75);
     }
 
     /**
@@ -66,10 +227,15 @@ class CharacterReader {
      */
     int nextIndexOf(char c) {
         // doesn't handle scanning for surrogates
-        for (int i = pos; i < length; i++) {
-            if (c == input[i])
-                return i - pos;
-        }
+        bufferUp();
+        int offset = 0;
+        do {
+            for (int i = bufPos + offset; i < bufLength; i++) {
+                if (c == charBuf[i])
+                    return i - bufPos;
+            }
+            offset = bufLength - bufPos;
+        } while (readAhead());
         return -1;
     }
 
@@ -81,145 +247,294 @@ class CharacterReader {
      */
     int nextIndexOf(CharSequence seq) {
         // doesn't handle scanning for surrogates
+        bufferUp();
         char startChar = seq.charAt(0);
-        for (int offset = pos; offset < length; offset++) {
+        int seqLen = seq.length();
+        for (int offset = 0; ensureAhead(offset + seqLen); offset++) {
             // scan to first instance of startchar:
-            if (startChar != input[offset])
-                while(++offset < length && startChar != input[offset]);
-            int i = offset + 1;
-            int last = i + seq.length()-1;
-            if (offset < length && last <= length) {
-                for (int j = 1; i < last && seq.charAt(j) == input[i]; i++, j++);
-                if (i == last) // found full sequence
-                    return offset - pos;
-            }
+            if (startChar != charBuf[bufPos + offset])
+                continue;
+            int i = bufPos + offset + 1;
+            int last = bufPos + offset + seqLen;
+            for (int j = 1; i < last && seq.charAt(j) == charBuf[i]; i++, j++);
+            if (i == last) // found full sequence
+                return offset;
         }
         return -1;
     }
 
+    // ensures that at least n chars are buffered from the current position. may grow the buffer.
+    private boolean ensureAhead(int n) {
+        while (bufLength - bufPos < n) {
+            if (!readAhead())
+                return false;
+        }
+        return true;
+    }
+
     String consumeTo(char c) {
-        int offset = nextIndexOf(c);
-        if (offset != -1) {
-            String consumed = new String(input, pos, offset);
-            pos += offset;
-            return consumed;
-        } else {
-            return consumeToEnd();
+        bufferUp();
+        StringBuilder accum = null;
+        int start = bufPos;
+        while (true) {
+            while (bufPos < bufLength && charBuf[bufPos] != c)
+                bufPos++;
+            if (bufPos < bufLength || readFully)
+                break;
+            accum = carry(accum, start);
+            start = bufPos;
         }
+        return runString(accum, start);
     }
 
     String consumeTo(String seq) {
-        int offset = nextIndexOf(seq);
+        int offset = nextIndexOfInBuffer(seq);
         if (offset != -1) {
-            String consumed = new String(input, pos, offset);
-            pos += offset;
+            String consumed = new String(charBuf, bufPos, offset);
+            bufPos += offset;
             return consumed;
-        } else {
+        } else if (readFully) {
             return consumeToEnd();
         }
+
+        // not found in this window: take all that can't be the start of seq, slide along, and look again
+        StringBuilder accum = new StringBuilder();
+        do {
+            int safe = bufLength - bufPos - seq.length() + 1;
+            if (safe > 0) {
+                accum.append(charBuf, bufPos, safe);
+                bufPos += safe;
+            }
+            readAhead();
+            offset = nextIndexOfInBuffer(seq);
+        } while (offset == -1 && !readFully);
+
+        if (offset != -1) {
+            accum.append(charBuf, bufPos, offset);
+            bufPos += offset;
+            return accum.toString();
+        }
+        return accum.append(consumeToEnd()).toString();
     }
 
-    String consumeToAny(final char... chars) {
-        int start = pos;
+    // as nextIndexOf(seq), but only scans what is currently buffered
+    private int nextIndexOfInBuffer(String seq) {
+        bufferUp();
+        char startChar = seq.charAt(0);
+        int seqLen = seq.length();
+        for (int offset = bufPos; offset < bufLength; offset++) {
+            if (startChar != charBuf[offset])
+                while(++offset < bufLength && startChar != charBuf[offset]);
+            int i = offset + 1;
+            int last = i + seqLen - 1;
+            if (offset < bufLength && last <= bufLength) {
+                for (int j = 1; i < last && seq.charAt(j) == charBuf[i]; i++, j++);
+                if (i == last) // found full sequence
+                    return offset - bufPos;
+            }
+        }
+        return -1;
+    }
 
-        OUTER: while (pos < length) {
-            for (int i = 0; i < chars.length; i++) {
-                if (input[pos] == chars[i])
-                    break OUTER;
+    String consumeToAny(final char... chars) {
+        bufferUp();
+        StringBuilder accum = null;
+        int start = bufPos;
+        while (true) {
+            OUTER: while (bufPos < bufLength) {
+                for (int i = 0; i < chars.length; i++) {
+                    if (charBuf[bufPos] == chars[i])
+                        break OUTER;
+                }
+                bufPos++;
             }
-            pos++;
+            if (bufPos < bufLength || readFully)
+                break;
+            accum = carry(accum, start);
+            start = bufPos;
         }
+        return runString(accum, start);
+    }
 
-        return pos > start ? new String(input, start, pos-start) : "";
+    /**
+     * Consumes up to the first char in the class, or to the end of the input.
+     * @param stops the chars to stop at
+     * @return the chars consumed
+     */
+    String consumeToAny(CharClass stops) {
+        bufferUp();
+        StringBuilder accum = null;
+        int start = bufPos;
+        while (true) {
+            while (bufPos < bufLength && !stops.contains(charBuf[bufPos]))
+                bufPos++;
+            if (bufPos < bufLength || readFully)
+                break;
+            accum = carry(accum, start);
+            start = bufPos;
+        }
+        return runString(accum, start);
     }
 
-    String consumeToEnd() {
-        String data = new String(input, pos, length-pos);
-        pos = length;
-        return data;
+    /**
+     * Advances up to the first char in the class, or to the end of the input, without copying the chars passed. Only
+     * for a fully buffered input (see {@link #shareBuffer()}).
+     * @param stops the chars to stop at
+     */
+    void advanceToAny(CharClass stops) {
+        while (bufPos < bufLength && !stops.contains(charBuf[bufPos]))
+            bufPos++;
     }
 
-    String consumeLetterSequence() {
-        int start = pos;
-        while (pos < length) {
-            char c = input[pos];
-            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))
-                pos++;
-            else
+    // consumes the run of chars that are in the class
+    private String consumeMatching(CharClass chars) {
+        bufferUp();
+        StringBuilder accum = null;
+        int start = bufPos;
+        while (true) {
+            while (bufPos < bufLength && chars.contains(charBuf[bufPos]))
+                bufPos++;
+            if (bufPos < bufLength || readFully)
+                break;
+            accum = carry(accum, start);
+            start = bufPos;
+        }
+        return runString(accum, start);
+    }
+
+    /**
+     * Consumes a tag or attribute name, up to any of the terminators. The name is lower-cased and canonicalised through
+     * the name cache, so a repeated name does not allocate.
+     */
+    String consumeName(NameCache names, CharClass terminators) {
+        bufferUp();
+        int start = bufPos;
+        while (bufPos < bufLength && !terminators.contains(charBuf[bufPos]))
+            bufPos++;
+        if (bufPos >= bufLength && !readFully) { // runs past the window. rare, so take the general path
+            bufPos = start;
+            String name = consumeToAny(terminators);
+            return names.lookup(name.toCharArray(), 0, name.length());
+        }
+        return names.lookup(charBuf, start, bufPos - start);
+    }
+
+    String consumeToEnd() {
+        bufferUp();
+        StringBuilder accum = null;
+        int start = bufPos;
+        while (true) {
+            bufPos = bufLength;
+            if (readFully)
                 break;
+            accum = carry(accum, start);
+            start = bufPos;
         }
+        return runString(accum, start);
+    }
 
-        return new String(input, start, pos - start);
+    String consumeLetterSequence() {
+        return consumeMatching(CharClass.letters);
     }
 
     String consumeLetterThenDigitSequence() {
-        int start = pos;
-        while (pos < length) {
-            char c = input[pos];
-            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))
-                pos++;
-            else
+        bufferUp();
+        StringBuilder accum = null;
+        int start = bufPos;
+        while (true) {
+            while (bufPos < bufLength && CharClass.letters.contains(charBuf[bufPos]))
+                bufPos++;
+            if (bufPos < bufLength || readFully)
                 break;
+            accum = carry(accum, start);
+            start = bufPos;
         }
-        while (!isEmpty()) {
-            char c = input[pos];
-            if (c >= '0' && c <= '9')
-                pos++;
-            else
+        while (true) {
+            while (bufPos < bufLength && CharClass.digits.contains(charBuf[bufPos]))
+                bufPos++;
+            if (bufPos < bufLength || readFully)
                 break;
+            accum = carry(accum, start);
+            start = bufPos;
         }
-
-        return new String(input, start, pos - start);
+        return runString(accum, start);
     }
 
-    String consumeHexSequence() {
-        int start = pos;
-        while (pos < length) {
-            char c = input[pos];
-            if ((c >= '0' && c <= '9') || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f'))
-                pos++;
-            else
+    /**
+     * Consumes the longest named character reference at the current position: either a name that is an entity on its
+     * own (e.g. {@code not} in {@code &notit;}), or a name that is only an entity with a closing ';', which is left
+     * unconsumed. Matched straight from the buffer, so no String is created.
+     * @param entities entity names
+     * @return the trie node of the matched entity; {@link EntityTrie#noMatch} if none (and nothing is consumed).
+     */
+    int consumeEntity(EntityTrie entities) {
+        bufferUp();
+        int node = EntityTrie.root;
+        int match = EntityTrie.noMatch;
+        int matchLen = 0;
+        for (int offset = 0; bufPos + offset < bufLength || ensureAhead(offset + 1); offset++) {
+            node = entities.child(node, charBuf[bufPos + offset]);
+            if (node == EntityTrie.noMatch)
                 break;
+            if (entities.isBaseEntity(node)
+                    || (entities.isEntity(node) && ensureAhead(offset + 2) && charBuf[bufPos + offset + 1] == ';')) {
+                match = node;
+                matchLen = offset + 1;
+            }
         }
-        return new String(input, start, pos - start);
+        bufPos += matchLen;
+        return match;
+    }
+
+    String consumeHexSequence() {
+        return consumeMatching(CharClass.hexDigits);
     }
 
     String consumeDigitSequence() {
-        int start = pos;
-        while (pos < length) {
-            char c = input[pos];
-            if (c >= '0' && c <= '9')
-                pos++;
-            else
-                break;
-        }
-        return new String(input, start, pos - start);
+        return consumeMatching(CharClass.digits);
+    }
+
+    // a consume run has hit the end of the window: keep what's been consumed so far, and slide the window along
+    private StringBuilder carry(StringBuilder accum, int start) {
+        if (accum == null)
+            accum = new StringBuilder(bufPos - start + 16);
+        accum.append(charBuf, start, bufPos - start);
+        readAhead();
+        return accum;
+    }
+
+    private String runString(StringBuilder accum, int start) {
+        if (accum == null)
+            return bufPos > start ? new String(charBuf, start, bufPos - start) : "";
+        return accum.append(charBuf, start, bufPos - start).toString();
     }
 
     boolean matches(char c) {
-        return !isEmpty() && input[pos] == c;
+        return !isEmpty() && charBuf[bufPos] == c;
 
     }
 
     boolean matches(String seq) {
+        bufferUp();
         int scanLength = seq.length();
-        if (scanLength > length - pos)
+        if (!ensureAhead(scanLength))
             return false;
 
         for (int offset = 0; offset < scanLength; offset++)
-            if (seq.charAt(offset) != input[pos+offset])
+            if (seq.charAt(offset) != charBuf[bufPos+offset])
                 return false;
         return true;
     }
 
     boolean matchesIgnoreCase(String seq) {
+        bufferUp();
         int scanLength = seq.length();
-        if (scanLength > length - pos)
+        if (!ensureAhead(scanLength))
             return false;
 
         for (int offset = 0; offset < scanLength; offset++) {
             char upScan = Character.toUpperCase(seq.charAt(offset));
-            char upTarget = Character.toUpperCase(input[pos + offset]);
+            char upTarget = Character.toUpperCase(charBuf[bufPos + offset]);
             if (upScan != upTarget)
                 return false;
         }
@@ -230,7 +545,7 @@ class CharacterReader {
         if (isEmpty())
             return false;
 
-        char c = input[pos];
+        char c = charBuf[bufPos];
         for (char seek : seq) {
             if (seek == c)
                 return true;
@@ -238,23 +553,21 @@ class CharacterReader {
         return false;
     }
 
+    boolean matchesAny(CharClass chars) {
+        return !isEmpty() && chars.contains(charBuf[bufPos]);
+    }
+
     boolean matchesLetter() {
-        if (isEmpty())
-            return false;
-        char c = input[pos];
-        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+        return matchesAny(CharClass.letters);
     }
 
     boolean matchesDigit() {
-        if (isEmpty())
-            return false;
-        char c = input[pos];
-        return (c >= '0' && c <= '9');
+        return matchesAny(CharClass.digits);
     }
 
     boolean matchConsume(String seq) {
         if (matches(seq)) {
-            pos += seq.length();
+            bufPos += seq.length();
             return true;
         } else {
             return false;
@@ -263,7 +576,7 @@ class CharacterReader {
 
     boolean matchConsumeIgnoreCase(String seq) {
         if (matchesIgnoreCase(seq)) {
-            pos += seq.length();
+            bufPos += seq.length();
             return true;
         } else {
             return false;
@@ -272,13 +585,27 @@ class CharacterReader {
 
     boolean containsIgnoreCase(String seq) {
         // used to check presence of </title>, </style>. only finds consistent case.
+        // when reading from a Reader, this will buffer up the remaining input until found.
+        // called for each < in a run of text, so where the sequence was found (or that it's not in the rest of the
+        // input) is kept; checks up to that point don't rescan, and the scans through a run are linear in total.
+        int pos = pos();
+        if (seq.equals(containsSeq) && pos >= containsFrom && (containsAt == -1 || pos <= containsAt))
+            return containsAt != -1;
+
         String loScan = seq.toLowerCase(Locale.ENGLISH);
         String hiScan = seq.toUpperCase(Locale.ENGLISH);
-        return (nextIndexOf(loScan) > -1) || (nextIndexOf(hiScan) > -1);
+        int offset = nextIndexOf(loScan);
+        if (offset == -1)
+            offset = nextIndexOf(hiScan);
+        containsSeq = seq;
+        containsFrom = pos;
+        containsAt = offset == -1 ? -1 : pos + offset;
+        return offset != -1;
     }
 
     @Override
     public String toString() {
-        return new String(input, pos, length - pos);
+        bufferUp();
+        return new String(charBuf, bufPos, bufLength - bufPos);
     }
 }
@@ -0,0 +1,150 @@
+package org.jsoup.parser;
+
+import org.jsoup.nodes.Entities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Properties;
+
+/**
+ * A char trie of the named character references, so the Tokeniser can find the longest entity name at the current
+ * input position by walking the input buffer, without building a String for the candidate name and probing maps.
+ * Nodes are laid out breadth first in parallel arrays, so the children of a node are a contiguous run sorted by char.
+ * Nodes with many children (the root, and the first letters of names) also get a table indexed directly by char.
+ */
+final class EntityTrie {
+    static final EntityTrie entities = new EntityTrie("entities-full.properties");
+    static final int root = 0;
+    static final int noMatch = -1;
+
+    private static final char tableStart = '0'; // names are ascii letters and digits
+    private static final int tableWidth = 'z' - tableStart + 1;
+    private static final int minTableChildren = 4; // fewer children are found quicker by a scan
+
+    private final int[] tableOffset; // offset of the node's table in tables, or -1 if it doesn't have one
+    private final int[] tables; // child node by char, 0 for none (the root can't be a child)
+    private final char[] labels; // the char leading into each node
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final char[] values; // the entity's character, if the path to the node is an entity name
+    private final boolean[] isBase; // if the entity may be used without a closing ';'
+
+    private EntityTrie(String filename) {
+        Properties properties = new Properties();
+        try {
+            InputStream in = Entities.class.getResourceAsStream(filename);
+            properties.load(in);
+            in.close();
+        } catch (IOException e) {
+            throw new MissingResourceException("Error loading entities resource: " + e.getMessage(), "Entities", filename);
+        }
+
+        // sorting the names means each level of the trie is in char order within each parent, as it's built
+        String[] names = properties.keySet().toArray(new String[properties.size()]);
+        Arrays.sort(names);
+        int maxLen = 0;
+        for (String name : names)
+            maxLen = Math.max(maxLen, name.length());
+
+        // build level by level. at each depth, a node is a distinct prefix; its parent is the prefix one shorter
+        List<String> prefixes = new ArrayList<String>();
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        prefixes.add("");
+        ids.put("", root);
+        for (int depth = 1; depth <= maxLen; depth++) {
+            for (String name : names) {
+                if (name.length() < depth)
+                    continue;
+                String prefix = name.substring(0, depth);
+                if (!ids.containsKey(prefix)) {
+                    ids.put(prefix, prefixes.size());
+                    prefixes.add(prefix);
+                }
+            }
+        }
+
+        int size = prefixes.size();
+        labels = new char[size];
+        firstChild = new int[size];
+        childCount = new int[size];
+        values = new char[size];
+        isBase = new boolean[size];
+        for (int node = 1; node < size; node++) { // children of a parent are contiguous, in char order
+            String prefix = prefixes.get(node);
+            char c = prefix.charAt(prefix.length() - 1);
+            int parent = ids.get(prefix.substring(0, prefix.length() - 1));
+            labels[node] = c;
+            if (childCount[parent]++ == 0)
+                firstChild[parent] = node;
+        }
+
+        int tableCount = 0;
+        tableOffset = new int[size];
+        for (int node = 0; node < size; node++)
+            tableOffset[node] = childCount[node] >= minTableChildren ? tableWidth * tableCount++ : -1;
+        tables = new int[tableWidth * tableCount];
+        for (int node = 1; node < size; node++) {
+            String prefix = prefixes.get(node);
+            int parent = ids.get(prefix.substring(0, prefix.length() - 1));
+            if (tableOffset[parent] != -1)
+                tables[tableOffset[parent] + labels[node] - tableStart] = node;
+        }
+        for (String name : names) {
+            int node = ids.get(name);
+            values[node] = Entities.getCharacterByName(name);
+            isBase[node] = Entities.isBaseNamedEntity(name);
+        }
+    }
+
+    /**
+     * Get the child of a node along the given char.
+     * @param node parent node; {@link #root} to start a match
+     * @param c next char of the name
+     * @return the child node, or {@link #noMatch} if no entity name continues with that char.
+     */
+    int child(int node, char c) {
+        int table = tableOffset[node];
+        if (table != -1) {
+            int i = c - tableStart;
+            if (i < 0 || i >= tableWidth)
+                return noMatch;
+            int child = tables[table + i];
+            return child != 0 ? child : noMatch;
+        }
+        for (int child = firstChild[node], end = child + childCount[node]; child < end; child++) {
+            char label = labels[child];
+            if (label == c)
+                return child;
+            if (label > c)
+                break;
+        }
+        return noMatch;
+    }
+
+    /**
+     * Check if the path to this node is an entity name.
+     */
+    boolean isEntity(int node) {
+        return values[node] != 0;
+    }
+
+    /**
+     * Check if the path to this node is an entity name that is recognised without a closing ';' (e.g. {@code &amp}).
+     */
+    boolean isBaseEntity(int node) {
+        return isBase[node];
+    }
+
+    /**
+     * Get the character of the entity named by the path to this node.
+     */
+    char value(int node) {
+        return values[node];
+    }
+}
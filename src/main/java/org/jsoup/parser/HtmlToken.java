@@ -0,0 +1,134 @@
+package org.jsoup.parser;
+
+import org.jsoup.nodes.Attributes;
+
+/**
+ * A token read from HTML by an {@link HtmlTokenReader}: a start or end tag, text, a comment, or a doctype. Tokens hold
+ * their own copies of their data, so remain valid after the reader moves on, and are immutable.
+ */
+public final class HtmlToken {
+    /**
+     * The type of a token.
+     */
+    public enum Type {
+        Doctype, StartTag, EndTag, Text, Comment
+    }
+
+    private final Type type;
+    private final String name; // tag or doctype name
+    private final String data; // text or comment data; doctype public id
+    private final String systemId; // doctype only
+    private final Attributes attributes; // start tag only; null if none
+    private final boolean selfClosing;
+
+    private HtmlToken(Type type, String name, String data, String systemId, Attributes attributes, boolean selfClosing) {
+        this.type = type;
+        this.name = name;
+        this.data = data;
+        this.systemId = systemId;
+        this.attributes = attributes;
+        this.selfClosing = selfClosing;
+    }
+
+    static HtmlToken of(Token token) {
+        switch (token.type) {
+            case StartTag:
+                Token.StartTag start = token.asStartTag();
+                return new HtmlToken(Type.StartTag, start.name(), null, null, start.attributes, start.isSelfClosing());
+            case EndTag:
+                return new HtmlToken(Type.EndTag, token.asEndTag().name(), null, null, null, false);
+            case Character:
+                return new HtmlToken(Type.Text, null, token.asCharacter().getData(), null, null, false);
+            case Comment:
+                return new HtmlToken(Type.Comment, null, token.asComment().getData(), null, null, false);
+            case Doctype:
+                Token.Doctype doctype = token.asDoctype();
+                return new HtmlToken(Type.Doctype, doctype.getName(), doctype.getPublicIdentifier(),
+                        doctype.getSystemIdentifier(), null, false);
+            default:
+                throw new IllegalArgumentException("Unexpected token type: " + token.type);
+        }
+    }
+
+    /**
+     * Get the type of this token.
+     * @return the token type
+     */
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * Get the lower-case name of a tag (e.g. {@code div}), or the name of a doctype.
+     * @return the name; null for text and comments
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Get a copy of the attributes of a start tag, with entities decoded. Changing the copy doesn't change this token.
+     * To read a single value without copying, use {@link #attr(String)}.
+     * @return a copy of the attributes; empty for other tokens
+     */
+    public Attributes attributes() {
+        return attributes != null ? attributes.clone() : new Attributes();
+    }
+
+    /**
+     * Get an attribute value of a start tag.
+     * @param key the attribute name
+     * @return the value, or an empty string if not set
+     */
+    public String attr(String key) {
+        return attributes != null ? attributes.get(key) : "";
+    }
+
+    /**
+     * Check if a start tag was self closing (e.g. {@code <br />}).
+     * @return if self closing
+     */
+    public boolean isSelfClosing() {
+        return selfClosing;
+    }
+
+    /**
+     * Get the text of a text token (with entities decoded), or the content of a comment.
+     * @return the data; null for tags and doctypes
+     */
+    public String data() {
+        return type == Type.Text || type == Type.Comment ? data : null;
+    }
+
+    /**
+     * Get the public ID of a doctype.
+     * @return the public ID; empty if not set, null if not a doctype
+     */
+    public String publicId() {
+        return type == Type.Doctype ? data : null;
+    }
+
+    /**
+     * Get the system ID of a doctype.
+     * @return the system ID; empty if not set, null if not a doctype
+     */
+    public String systemId() {
+        return systemId;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case StartTag:
+                return "<" + name + (attributes != null ? attributes.html() : "") + (selfClosing ? " />" : ">");
+            case EndTag:
+                return "</" + name + ">";
+            case Comment:
+                return "<!--" + data + "-->";
+            case Doctype:
+                return "<!doctype " + name + ">";
+            default:
+                return data;
+        }
+    }
+}
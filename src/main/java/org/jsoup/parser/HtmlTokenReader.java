@@ -0,0 +1,105 @@
+package org.jsoup.parser;
+
+import org.jsoup.helper.StringUtil;
+
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads HTML as a sequence of {@link HtmlToken tokens}, with the HTML tokeniser but without building a tree. Useful when
+ * only the tags or text of a document are needed, such as to find links or strip tags, as no nodes are created.
+ * <p>
+ * Tokens are as they appear in the input: no tags are implied or corrected, as they would be by the tree builder. The
+ * contents of {@code script}, {@code style}, {@code title}, {@code textarea} and similar elements are read as text up
+ * to their end tag, as in a browser.
+ * </p>
+ * <p>Usage example:</p>
+ * <pre>
+ * HtmlTokenReader tokens = new HtmlTokenReader(html);
+ * while (tokens.hasNext()) {
+ *     HtmlToken token = tokens.next();
+ *     if (token.type() == HtmlToken.Type.StartTag &amp;&amp; token.name().equals("a"))
+ *         links.add(token.attr("href"));
+ * }
+ * </pre>
+ */
+public class HtmlTokenReader implements Iterator<HtmlToken> {
+    private final Tokeniser tokeniser;
+    private HtmlToken next; // read ahead for hasNext
+    private boolean done;
+
+    /**
+     * Create a token reader over a string of HTML.
+     * @param html HTML to read
+     */
+    public HtmlTokenReader(String html) {
+        this(new CharacterReader(html));
+    }
+
+    /**
+     * Create a token reader over HTML from a Reader. Input is read incrementally as tokens are read; the Reader is not
+     * closed.
+     * @param html HTML to read
+     */
+    public HtmlTokenReader(Reader html) {
+        this(new CharacterReader(html));
+    }
+
+    private HtmlTokenReader(CharacterReader reader) {
+        tokeniser = new Tokeniser(reader, ParseErrorList.noTracking());
+    }
+
+    /**
+     * Check if there is another token.
+     * @return true if there is another token
+     * @throws org.jsoup.UncheckedIOException if the Reader throws an IOException
+     */
+    public boolean hasNext() {
+        if (next == null && !done) {
+            Token token = tokeniser.read();
+            if (token.type == Token.TokenType.EOF) {
+                done = true;
+            } else {
+                next = HtmlToken.of(token);
+                if (token.isStartTag() && !token.asStartTag().isSelfClosing())
+                    transitionForContent(next.name());
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * Read the next token.
+     * @return the next token
+     * @throws NoSuchElementException if there are no more tokens
+     * @throws org.jsoup.UncheckedIOException if the Reader throws an IOException
+     */
+    public HtmlToken next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        HtmlToken token = next;
+        next = null;
+        return token;
+    }
+
+    /**
+     * Not supported.
+     * @throws UnsupportedOperationException always
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("Tokens cannot be removed");
+    }
+
+    // the tree builder switches the tokeniser to read the content of these elements as text; do the same here
+    private void transitionForContent(String tagName) {
+        if (StringUtil.in(tagName, "title", "textarea"))
+            tokeniser.transition(TokeniserState.Rcdata);
+        else if (StringUtil.in(tagName, "iframe", "noembed", "noframes", "style", "xmp"))
+            tokeniser.transition(TokeniserState.Rawtext);
+        else if (tagName.equals("script"))
+            tokeniser.transition(TokeniserState.ScriptData);
+        else if (tagName.equals("plaintext"))
+            tokeniser.transition(TokeniserState.PLAINTEXT);
+    }
+}
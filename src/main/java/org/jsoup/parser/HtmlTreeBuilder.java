@@ -1,63 +1,62 @@
 package org.jsoup.parser;
 
-import org.jsoup.helper.DescendableLinkedList;
 import org.jsoup.helper.StringUtil;
 import org.jsoup.helper.Validate;
 import org.jsoup.nodes.*;
 import org.jsoup.select.Elements;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * HTML Tree Builder; creates a DOM from Tokens.
  */
 class HtmlTreeBuilder extends TreeBuilder {
-    // tag searches
-    private static final String[] TagsScriptStyle = new String[]{"script", "style"};
-    public static final String[] TagsSearchInScope = new String[]{"applet", "caption", "html", "table", "td", "th", "marquee", "object"};
-    private static final String[] TagSearchList = new String[]{"ol", "ul"};
-    private static final String[] TagSearchButton = new String[]{"button"};
-    private static final String[] TagSearchTableScope = new String[]{"html", "table"};
-    private static final String[] TagSearchSelectScope = new String[]{"optgroup", "option"};
-    private static final String[] TagSearchEndTags = new String[]{"dd", "dt", "li", "option", "optgroup", "p", "rp", "rt"};
-    private static final String[] TagSearchSpecial = new String[]{"address", "applet", "area", "article", "aside", "base", "basefont", "bgsound",
-            "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup", "command", "dd",
-            "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure", "footer", "form",
-            "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html",
-            "iframe", "img", "input", "isindex", "li", "link", "listing", "marquee", "menu", "meta", "nav",
-            "noembed", "noframes", "noscript", "object", "ol", "p", "param", "plaintext", "pre", "script",
-            "section", "select", "style", "summary", "table", "tbody", "td", "textarea", "tfoot", "th", "thead",
-            "title", "tr", "ul", "wbr", "xmp"};
-
     private HtmlTreeBuilderState state; // the current state
     private HtmlTreeBuilderState originalState; // original / marked state
 
     private boolean baseUriSetFromDoc = false;
     private Element headElement; // the current head element
-    private FormElement formElement; // the current form element
+    private Element formElement; // the current form element; a FormElement unless it was filtered out
     private Element contextElement; // fragment parse context -- could be null even if fragment parsing
-    private DescendableLinkedList<Element> formattingElements = new DescendableLinkedList<Element>(); // active (open) formatting elements
+    private final ArrayList<Element> formattingElements = new ArrayList<Element>(); // active (open) formatting elements
     private List<Token.Character> pendingTableCharacters = new ArrayList<Token.Character>(); // chars in table to be shifted out
 
     private boolean framesetOk = true; // if ok to go into frameset
     private boolean fosterInserts = false; // if next inserts should be fostered
     private boolean fragmentParsing = false; // if parsing a fragment of html
+    private TextNode heldWhitespace; // in lean mode, whitespace that is added or dropped once the next node is seen
+    private Element heldWhitespaceParent;
 
     HtmlTreeBuilder() {}
 
     @Override
-    Document parse(String input, String baseUri, ParseErrorList errors) {
+    void reset() {
+        super.reset();
+        state = null;
+        originalState = null;
+        baseUriSetFromDoc = false;
+        headElement = null;
+        formElement = null;
+        contextElement = null;
+        formattingElements.clear();
+        pendingTableCharacters.clear();
+        framesetOk = true;
+        fosterInserts = false;
+        fragmentParsing = false;
+        heldWhitespace = null;
+        heldWhitespaceParent = null;
+    }
+
+    @Override
+    protected void initialiseParse(CharacterReader input, String baseUri, ParseErrorList errors) {
+        super.initialiseParse(input, baseUri, errors);
         state = HtmlTreeBuilderState.Initial;
-        return super.parse(input, baseUri, errors);
     }
 
     List<Node> parseFragment(String inputFragment, Element context, String baseUri, ParseErrorList errors) {
         // context may be null
-        state = HtmlTreeBuilderState.Initial;
-        initialiseParse(inputFragment, baseUri, errors);
+        initialiseParse(new CharacterReader(inputFragment), baseUri, errors);
         contextElement = context;
         fragmentParsing = true;
         Element root = null;
@@ -83,7 +82,7 @@ class HtmlTreeBuilder extends TreeBuilder {
 
             root = new Element(Tag.valueOf("html"), baseUri);
             doc.appendChild(root);
-            stack.push(root);
+            stack.add(root);
             resetInsertionMode();
 
             // setup form element to nearest form on context (up ancestor chain). ensures form controls are associated
@@ -111,6 +110,30 @@ class HtmlTreeBuilder extends TreeBuilder {
         return this.state.process(token, this);
     }
 
+    @Override
+    boolean deepens(Token.StartTag startTag) {
+        String name = startTag.name();
+        if (startTag.isSelfClosing() || Tag.valueOf(name).isEmpty() || StringUtil.in(name, "html", "head", "body"))
+            return false;
+        // these close a current element of the same name, and open in its place
+        return !(name.equals(currentElement().nodeName()) &&
+                StringUtil.in(name, "p", "li", "dd", "dt", "option", "tr", "td", "th"));
+    }
+
+    @Override
+    void dropped(Token.StartTag startTag) {
+        // as the insertion modes would, so their content is read as text, up to their end tag
+        String name = startTag.name();
+        if (StringUtil.in(name, "title", "textarea"))
+            tokeniser.transition(TokeniserState.Rcdata);
+        else if (StringUtil.in(name, "iframe", "noembed", "noframes", "style", "xmp"))
+            tokeniser.transition(TokeniserState.Rawtext);
+        else if (name.equals("script"))
+            tokeniser.transition(TokeniserState.ScriptData);
+        else if (name.equals("plaintext"))
+            tokeniser.transition(TokeniserState.PLAINTEXT); // once in, never gets out
+    }
+
     boolean process(Token token, HtmlTreeBuilderState state) {
         currentToken = token;
         return state.process(token, this);
@@ -180,13 +203,13 @@ class HtmlTreeBuilder extends TreeBuilder {
             return el;
         }
         
-        Element el = new Element(Tag.valueOf(startTag.name()), baseUri, startTag.attributes);
+        Element el = newElement(Tag.valueOf(startTag.name()), startTag.getAttributes(), true);
         insert(el);
         return el;
     }
 
     Element insert(String startTagName) {
-        Element el = new Element(Tag.valueOf(startTagName), baseUri);
+        Element el = newElement(Tag.valueOf(startTagName), new Attributes(), true);
         insert(el);
         return el;
     }
@@ -198,7 +221,7 @@ class HtmlTreeBuilder extends TreeBuilder {
 
     Element insertEmpty(Token.StartTag startTag) {
         Tag tag = Tag.valueOf(startTag.name());
-        Element el = new Element(tag, baseUri, startTag.attributes);
+        Element el = newElement(tag, startTag.getAttributes(), false);
         insertNode(el);
         if (startTag.isSelfClosing()) {
             if (tag.isKnownTag()) {
@@ -212,9 +235,12 @@ class HtmlTreeBuilder extends TreeBuilder {
         return el;
     }
 
-    FormElement insertForm(Token.StartTag startTag, boolean onStack) {
+    Element insertForm(Token.StartTag startTag, boolean onStack) {
         Tag tag = Tag.valueOf(startTag.name());
-        FormElement el = new FormElement(tag, baseUri, startTag.attributes);
+        ParseFilter.Action action = filterAction(tag, startTag.getAttributes());
+        boolean unwrapped = onStack && overDepth();
+        Element el = action == null && !unwrapped ? new FormElement(tag, baseUri, startTag.getAttributes()) :
+                new FilteredElement(tag, baseUri, startTag.getAttributes(), action);
         setFormElement(el);
         insertNode(el);
         if (onStack)
@@ -223,51 +249,103 @@ class HtmlTreeBuilder extends TreeBuilder {
     }
 
     void insert(Token.Comment commentToken) {
+        if (lean)
+            return;
+        if (filter != null && (insertionFilter() != null || !filter.comment(commentToken.getData())))
+            return;
         Comment comment = new Comment(commentToken.getData(), baseUri);
         insertNode(comment);
     }
 
     void insert(Token.Character characterToken) {
+        Element parent = currentElement();
+        if (parent instanceof FilteredElement) {
+            if (insertionFilter() == ParseFilter.Action.skip)
+                return;
+            parent = keptElement(); // text of keepText elements goes into the nearest kept element
+        }
+        countNode();
+        if (isReportingEvents()) { // no node needed
+            reportText(parent, characterToken.getData());
+            return;
+        }
         Node node;
         // characters in script and style go in as datanodes, not text nodes
-        String tagName = currentElement().tagName();
-        if (tagName.equals("script") || tagName.equals("style"))
+        String tagName = parent.tagName();
+        if (tagName.equals("script") || tagName.equals("style")) {
             node = new DataNode(characterToken.getData(), baseUri);
-        else
-            node = new TextNode(characterToken.getData(), baseUri);
-        currentElement().appendChild(node); // doesn't use insertNode, because we don't foster these; and will always have a stack.
+        } else {
+            TextNode text = new TextNode(characterToken.getChars(), baseUri);
+            releaseWhitespace(parent, text);
+            if (lean && HtmlTreeBuilderState.isWhitespace(characterToken) && !preservesWhitespace(parent)) {
+                if (parent.childNodeSize() > 0 || !rendersAsBlock(parent)) { // dropped if at the start of a block
+                    heldWhitespace = text;
+                    heldWhitespaceParent = parent;
+                }
+                return;
+            }
+            node = text;
+        }
+        parent.appendChild(node); // doesn't use insertNode, because we don't foster these; and will always have a stack.
+    }
+
+    // in lean mode, whitespace is held back until the next node is inserted. it's dropped if that is a block in the same
+    // parent, as a browser would not render it, and text() puts a space before a block anyway; otherwise it's added.
+    // kept before a table, as content can be foster parented in between
+    private void releaseWhitespace(Element parent, Node next) {
+        if (heldWhitespace == null)
+            return;
+        if (!(parent == heldWhitespaceParent && next instanceof Element && rendersAsBlock((Element) next)
+                && !((Element) next).nodeName().equals("table")))
+            heldWhitespaceParent.appendChild(heldWhitespace);
+        heldWhitespace = null;
+        heldWhitespaceParent = null;
+    }
+
+    private static boolean preservesWhitespace(Element el) {
+        return el.tag().preserveWhitespace() || (el.parent() != null && el.parent().tag().preserveWhitespace());
+    }
+
+    private static boolean rendersAsBlock(Element el) {
+        return el.isBlock() && !StringUtil.in(el.nodeName(), "ins", "del", "s", "video", "audio", "canvas");
     }
 
     private void insertNode(Node node) {
+        if (node instanceof FilteredElement) // only tracked on the stack
+            return;
+        countNode();
+
         // if the stack hasn't been set up yet, elements (doctype, comments) go into the doc
-        if (stack.size() == 0)
-            doc.appendChild(node);
-        else if (isFosterInserts())
+        Element parent = stack.size() == 0 ? doc : keptElement(); // past unwrapped elements
+        releaseWhitespace(isFosterInserts() ? null : parent, node);
+        if (isFosterInserts() && stack.size() > 0 && !isReportingEvents()) // the table has already been reported, so can't foster
             insertInFosterParent(node);
         else
-            currentElement().appendChild(node);
+            appendNode(parent, node);
 
         // connect form controls to their form element
-        if (node instanceof Element && ((Element) node).tag().isFormListed()) {
-            if (formElement != null)
-                formElement.addElement((Element) node);
+        if (node instanceof Element && ((Element) node).tag().isFormListed() && !isReportingEvents()) {
+            if (formElement instanceof FormElement)
+                ((FormElement) formElement).addElement((Element) node);
         }
     }
 
     Element pop() {
+        int size = stack.size();
         // todo - dev, remove validation check
-        if (stack.peekLast().nodeName().equals("td") && !state.name().equals("InCell"))
+        Element last = stack.get(size-1);
+        if (last.nodeName().equals("td") && !state.name().equals("InCell"))
             Validate.isFalse(true, "pop td not in cell");
-        if (stack.peekLast().nodeName().equals("html"))
+        if (last.nodeName().equals("html"))
             Validate.isFalse(true, "popping html!");
-        return stack.pollLast();
+        return stack.remove(size-1);
     }
 
     void push(Element element) {
         stack.add(element);
     }
 
-    DescendableLinkedList<Element> getStack() {
+    ArrayList<Element> getStack() {
         return stack;
     }
 
@@ -275,10 +353,9 @@ class HtmlTreeBuilder extends TreeBuilder {
         return isElementInQueue(stack, el);
     }
 
-    private boolean isElementInQueue(DescendableLinkedList<Element> queue, Element element) {
-        Iterator<Element> it = queue.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+    private boolean isElementInQueue(ArrayList<Element> queue, Element element) {
+        for (int pos = queue.size() - 1; pos >= 0; pos--) {
+            Element next = queue.get(pos);
             if (next == element) {
                 return true;
             }
@@ -287,9 +364,8 @@ class HtmlTreeBuilder extends TreeBuilder {
     }
 
     Element getFromStack(String elName) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.get(pos);
             if (next.nodeName().equals(elName)) {
                 return next;
             }
@@ -298,11 +374,10 @@ class HtmlTreeBuilder extends TreeBuilder {
     }
 
     boolean removeFromStack(Element el) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.get(pos);
             if (next == el) {
-                it.remove();
+                stack.remove(pos);
                 return true;
             }
         }
@@ -310,40 +385,28 @@ class HtmlTreeBuilder extends TreeBuilder {
     }
 
     void popStackToClose(String elName) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
-            if (next.nodeName().equals(elName)) {
-                it.remove();
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.remove(pos);
+            if (next.nodeName().equals(elName))
                 break;
-            } else {
-                it.remove();
-            }
         }
     }
 
-    void popStackToClose(String... elNames) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
-            if (StringUtil.in(next.nodeName(), elNames)) {
-                it.remove();
+    void popStackToClose(int category) {
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.remove(pos);
+            if (next.tag().is(category))
                 break;
-            } else {
-                it.remove();
-            }
         }
     }
 
     void popStackToBefore(String elName) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
-            if (next.nodeName().equals(elName)) {
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.get(pos);
+            if (next.nodeName().equals(elName))
                 break;
-            } else {
-                it.remove();
-            }
+            else
+                stack.remove(pos);
         }
     }
 
@@ -360,30 +423,28 @@ class HtmlTreeBuilder extends TreeBuilder {
     }
 
     private void clearStackToContext(String... nodeNames) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.get(pos);
             if (StringUtil.in(next.nodeName(), nodeNames) || next.nodeName().equals("html"))
                 break;
             else
-                it.remove();
+                stack.remove(pos);
         }
     }
 
     Element aboveOnStack(Element el) {
         assert onStack(el);
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.get(pos);
             if (next == el) {
-                return it.next();
+                return stack.get(pos-1);
             }
         }
         return null;
     }
 
     void insertOnStackAfter(Element after, Element in) {
-        int i = stack.lastIndexOf(after);
+        int i = lastIndexOf(stack, after);
         Validate.isTrue(i != -1);
         stack.add(i+1, in);
     }
@@ -392,19 +453,26 @@ class HtmlTreeBuilder extends TreeBuilder {
         replaceInQueue(stack, out, in);
     }
 
-    private void replaceInQueue(LinkedList<Element> queue, Element out, Element in) {
-        int i = queue.lastIndexOf(out);
+    private void replaceInQueue(ArrayList<Element> queue, Element out, Element in) {
+        int i = lastIndexOf(queue, out);
         Validate.isTrue(i != -1);
-        queue.remove(i);
-        queue.add(i, in);
+        queue.set(i, in);
+    }
+
+    // identity scan from the end, where the element being looked for usually is
+    private static int lastIndexOf(ArrayList<Element> queue, Element el) {
+        for (int pos = queue.size() - 1; pos >= 0; pos--) {
+            if (queue.get(pos) == el)
+                return pos;
+        }
+        return -1;
     }
 
     void resetInsertionMode() {
         boolean last = false;
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element node = it.next();
-            if (!it.hasNext()) {
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element node = stack.get(pos);
+            if (pos == 0) {
                 last = true;
                 node = contextElement;
             }
@@ -450,60 +518,48 @@ class HtmlTreeBuilder extends TreeBuilder {
     }
 
     // todo: tidy up in specific scope methods
-    private boolean inSpecificScope(String targetName, String[] baseTypes, String[] extraTypes) {
-        return inSpecificScope(new String[]{targetName}, baseTypes, extraTypes);
-    }
-
-    private boolean inSpecificScope(String[] targetNames, String[] baseTypes, String[] extraTypes) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element el = it.next();
-            String elName = el.nodeName();
-            if (StringUtil.in(elName, targetNames))
+    // scope boundaries are checked as Tag category bits, rather than by scanning lists of names
+    private boolean inSpecificScope(String targetName, int targetCategory, int boundaries) {
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element el = stack.get(pos);
+            Tag tag = el.tag();
+            if (tag.is(targetCategory) || el.nodeName().equals(targetName))
                 return true;
-            if (StringUtil.in(elName, baseTypes))
-                return false;
-            if (extraTypes != null && StringUtil.in(elName, extraTypes))
+            if (tag.is(boundaries))
                 return false;
         }
         Validate.fail("Should not be reachable");
         return false;
     }
 
-    boolean inScope(String[] targetNames) {
-        return inSpecificScope(targetNames, TagsSearchInScope, null);
+    boolean inScope(int targetCategory) {
+        return inSpecificScope(null, targetCategory, Tag.ScopeBoundary);
     }
 
     boolean inScope(String targetName) {
-        return inScope(targetName, null);
-    }
-
-    boolean inScope(String targetName, String[] extras) {
-        return inSpecificScope(targetName, TagsSearchInScope , extras);
+        return inSpecificScope(targetName, 0, Tag.ScopeBoundary);
         // todo: in mathml namespace: mi, mo, mn, ms, mtext annotation-xml
         // todo: in svg namespace: forignOjbect, desc, title
     }
 
     boolean inListItemScope(String targetName) {
-        return inScope(targetName, TagSearchList);
+        return inSpecificScope(targetName, 0, Tag.ScopeBoundary | Tag.ListScopeBoundary);
     }
 
     boolean inButtonScope(String targetName) {
-        return inScope(targetName, TagSearchButton);
+        return inSpecificScope(targetName, 0, Tag.ScopeBoundary | Tag.ButtonScopeBoundary);
     }
 
     boolean inTableScope(String targetName) {
-        return inSpecificScope(targetName, TagSearchTableScope, null);
+        return inSpecificScope(targetName, 0, Tag.TableScopeBoundary);
     }
 
     boolean inSelectScope(String targetName) {
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element el = it.next();
-            String elName = el.nodeName();
-            if (elName.equals(targetName))
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element el = stack.get(pos);
+            if (el.nodeName().equals(targetName))
                 return true;
-            if (!StringUtil.in(elName, TagSearchSelectScope)) // all elements except
+            if (!el.tag().is(Tag.Option)) // all elements except
                 return false;
         }
         Validate.fail("Should not be reachable");
@@ -526,11 +582,11 @@ class HtmlTreeBuilder extends TreeBuilder {
         this.fosterInserts = fosterInserts;
     }
 
-    FormElement getFormElement() {
+    Element getFormElement() {
         return formElement;
     }
 
-    void setFormElement(FormElement formElement) {
+    void setFormElement(Element formElement) {
         this.formElement = formElement;
     }
 
@@ -557,7 +613,7 @@ class HtmlTreeBuilder extends TreeBuilder {
      */
     void generateImpliedEndTags(String excludeTag) {
         while ((excludeTag != null && !currentElement().nodeName().equals(excludeTag)) &&
-                StringUtil.in(currentElement().nodeName(), TagSearchEndTags))
+                currentElement().tag().is(Tag.ImpliedEndTag))
             pop();
     }
 
@@ -568,16 +624,14 @@ class HtmlTreeBuilder extends TreeBuilder {
     boolean isSpecial(Element el) {
         // todo: mathml's mi, mo, mn
         // todo: svg's foreigObject, desc, title
-        String name = el.nodeName();
-        return StringUtil.in(name, TagSearchSpecial);
+        return el.tag().is(Tag.Special);
     }
 
     // active formatting elements
     void pushActiveFormattingElements(Element in) {
         int numSeen = 0;
-        Iterator<Element> iter = formattingElements.descendingIterator();
-        while (iter.hasNext()) {
-            Element el =  iter.next();
+        for (int pos = formattingElements.size() - 1; pos >= 0; pos--) {
+            Element el = formattingElements.get(pos);
             if (el == null) // marker
                 break;
 
@@ -585,7 +639,7 @@ class HtmlTreeBuilder extends TreeBuilder {
                 numSeen++;
 
             if (numSeen == 3) {
-                iter.remove();
+                formattingElements.remove(pos);
                 break;
             }
         }
@@ -602,10 +656,10 @@ class HtmlTreeBuilder extends TreeBuilder {
 
     void reconstructFormattingElements() {
         int size = formattingElements.size();
-        if (size == 0 || formattingElements.getLast() == null || onStack(formattingElements.getLast()))
+        if (size == 0 || formattingElements.get(size-1) == null || onStack(formattingElements.get(size-1)))
             return;
 
-        Element entry = formattingElements.getLast();
+        Element entry = formattingElements.get(size-1);
         int pos = size - 1;
         boolean skip = false;
         while (true) {
@@ -624,13 +678,15 @@ class HtmlTreeBuilder extends TreeBuilder {
 
             // 8. create new element from element, 9 insert into current node, onto stack
             skip = false; // can only skip increment from 4.
-            Element newEl = insert(entry.nodeName()); // todo: avoid fostering here?
+            Attributes attributes = new Attributes();
+            attributes.addAll(entry.attributes());
+            ParseFilter.Action action = stricter(isUnwrapped(entry) ? null : filterAction(entry), insertionFilter());
+            Element newEl = newElement(Tag.valueOf(entry.nodeName()), attributes, action, true);
+            insert(newEl); // todo: avoid fostering here?
             // newEl.namespace(entry.namespace()); // todo: namespaces
-            newEl.attributes().addAll(entry.attributes());
 
             // 10. replace entry with new entry
-            formattingElements.add(pos, newEl);
-            formattingElements.remove(pos + 1);
+            formattingElements.set(pos, newEl);
 
             // 11
             if (pos == size-1) // if not last entry in list, jump to 7
@@ -640,19 +696,17 @@ class HtmlTreeBuilder extends TreeBuilder {
 
     void clearFormattingElementsToLastMarker() {
         while (!formattingElements.isEmpty()) {
-            Element el = formattingElements.peekLast();
-            formattingElements.removeLast();
+            Element el = formattingElements.remove(formattingElements.size() - 1);
             if (el == null)
                 break;
         }
     }
 
     void removeFromActiveFormattingElements(Element el) {
-        Iterator<Element> it = formattingElements.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+        for (int pos = formattingElements.size() - 1; pos >= 0; pos--) {
+            Element next = formattingElements.get(pos);
             if (next == el) {
-                it.remove();
+                formattingElements.remove(pos);
                 break;
             }
         }
@@ -663,9 +717,8 @@ class HtmlTreeBuilder extends TreeBuilder {
     }
 
     Element getActiveFormattingElement(String nodeName) {
-        Iterator<Element> it = formattingElements.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+        for (int pos = formattingElements.size() - 1; pos >= 0; pos--) {
+            Element next = formattingElements.get(pos);
             if (next == null) // scope marker
                 break;
             else if (next.nodeName().equals(nodeName))
@@ -704,6 +757,98 @@ class HtmlTreeBuilder extends TreeBuilder {
             fosterParent.appendChild(in);
     }
 
+    // parse filtering: elements the filter drops are created as FilteredElements, which are pushed on the stack and
+    // formatting list as usual, so the tree building rules run unchanged, but are never linked into the tree. content
+    // inserted while one is open is dropped, or for keepText, only its text is kept, in the nearest kept element.
+    // start tags too deep for the max depth are dropped before processing (see TreeBuilder); those the tree building
+    // rules still push past it (e.g. in reconstructing formatting elements) are unwrapped: filtered like keepText, but
+    // not their content, which is kept in the nearest kept element.
+    private static final class FilteredElement extends Element {
+        private final ParseFilter.Action action;
+        private final boolean unwrapped;
+
+        // a null action unwraps the element
+        FilteredElement(Tag tag, String baseUri, Attributes attributes, ParseFilter.Action action) {
+            super(tag, baseUri, attributes);
+            this.unwrapped = action == null;
+            this.action = unwrapped ? ParseFilter.Action.keepText : action;
+        }
+    }
+
+    private static boolean isUnwrapped(Element el) {
+        return el instanceof FilteredElement && ((FilteredElement) el).unwrapped;
+    }
+
+    // the filter action on content inserted now: null to keep, or the strictest action of the open filtered elements
+    private ParseFilter.Action insertionFilter() {
+        ParseFilter.Action action = null;
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element el = stack.get(pos);
+            if (!(el instanceof FilteredElement))
+                break;
+            if (!((FilteredElement) el).unwrapped)
+                action = stricter(action, ((FilteredElement) el).action);
+        }
+        return action;
+    }
+
+    // the nearest open element that is in the tree
+    private Element keptElement() {
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element el = stack.get(pos);
+            if (!(el instanceof FilteredElement))
+                return el;
+        }
+        return stack.get(0);
+    }
+
+    private static ParseFilter.Action stricter(ParseFilter.Action a, ParseFilter.Action b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return a.ordinal() > b.ordinal() ? a : b;
+    }
+
+    // the filter action for a new element: null to keep it
+    private ParseFilter.Action filterAction(Tag tag, Attributes attributes) {
+        if (filter == null)
+            return null;
+        ParseFilter.Action action = insertionFilter();
+        if (action != ParseFilter.Action.skip) { // the filter isn't consulted within skipped content
+            ParseFilter.Action elAction = filter.element(tag.getName(), attributes);
+            Validate.notNull(elAction, "Filter action must not be null");
+            action = stricter(action, elAction == ParseFilter.Action.keep ? null : elAction);
+        }
+        return action;
+    }
+
+    private Element newElement(Tag tag, Attributes attributes, boolean onStack) {
+        return newElement(tag, attributes, filterAction(tag, attributes), onStack);
+    }
+
+    // a kept element; or filtered if it has a filter action, or unwrapped if going on the stack deeper than the limit
+    private Element newElement(Tag tag, Attributes attributes, ParseFilter.Action action, boolean onStack) {
+        boolean unwrapped = onStack && overDepth();
+        return action == null && !unwrapped ? new Element(tag, baseUri, attributes) :
+                new FilteredElement(tag, baseUri, attributes, action);
+    }
+
+    /**
+     * Create an element with the same tag as the original, as the adoption agency and formatting reconstruction do. It
+     * is filtered if the original was, or if the content it is going into is.
+     */
+    Element copyElement(Element original, Attributes attributes, ParseFilter.Action within) {
+        ParseFilter.Action action = stricter(filterAction(original), within);
+        Tag tag = Tag.valueOf(original.nodeName());
+        return action == null ? new Element(tag, baseUri, attributes) : new FilteredElement(tag, baseUri, attributes, action);
+    }
+
+    // null if the element is kept (unwrapped elements are not, so are copied as keepText)
+    ParseFilter.Action filterAction(Element el) {
+        return el instanceof FilteredElement ? ((FilteredElement) el).action : null;
+    }
+
     @Override
     public String toString() {
         return "TreeBuilder{" +
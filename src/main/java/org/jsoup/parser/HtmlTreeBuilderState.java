@@ -1,11 +1,9 @@
 package org.jsoup.parser;
 
-import org.jsoup.helper.DescendableLinkedList;
 import org.jsoup.helper.StringUtil;
 import org.jsoup.nodes.*;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 /**
  * The Tree Builder's current state. Each state embodies the processing for the state, and transitions to other states.
@@ -22,7 +20,7 @@ enum HtmlTreeBuilderState {
                 // todo: quirk state check on doctype ids
                 Token.Doctype d = t.asDoctype();
                 DocumentType doctype = new DocumentType(d.getName(), d.getPublicIdentifier(), d.getSystemIdentifier(), tb.getBaseUri());
-                tb.getDocument().appendChild(doctype);
+                tb.appendNode(tb.getDocument(), doctype);
                 if (d.isForceQuirks())
                     tb.getDocument().quirksMode(Document.QuirksMode.quirks);
                 tb.transition(BeforeHtml);
@@ -248,7 +246,7 @@ enum HtmlTreeBuilderState {
             switch (t.type) {
                 case Character: {
                     Token.Character c = t.asCharacter();
-                    if (c.getData().equals(nullString)) {
+                    if (nullString.contentEquals(c.getChars())) {
                         // todo confirm that check
                         tb.error(this);
                         return false;
@@ -276,16 +274,16 @@ enum HtmlTreeBuilderState {
                     if (name.equals("html")) {
                         tb.error(this);
                         // merge attributes onto real html
-                        Element html = tb.getStack().getFirst();
+                        Element html = tb.getStack().get(0);
                         for (Attribute attribute : startTag.getAttributes()) {
                             if (!html.hasAttr(attribute.getKey()))
                                 html.attributes().put(attribute);
                         }
-                    } else if (StringUtil.in(name, Constants.InBodyStartToHead)) {
+                    } else if (startTag.is(Tag.InBodyStartToHead)) {
                         return tb.process(t, InHead);
                     } else if (name.equals("body")) {
                         tb.error(this);
-                        LinkedList<Element> stack = tb.getStack();
+                        ArrayList<Element> stack = tb.getStack();
                         if (stack.size() == 1 || (stack.size() > 2 && !stack.get(1).nodeName().equals("body"))) {
                             // only in fragment case
                             return false; // ignore
@@ -299,7 +297,7 @@ enum HtmlTreeBuilderState {
                         }
                     } else if (name.equals("frameset")) {
                         tb.error(this);
-                        LinkedList<Element> stack = tb.getStack();
+                        ArrayList<Element> stack = tb.getStack();
                         if (stack.size() == 1 || (stack.size() > 2 && !stack.get(1).nodeName().equals("body"))) {
                             // only in fragment case
                             return false; // ignore
@@ -311,25 +309,25 @@ enum HtmlTreeBuilderState {
                                 second.remove();
                             // pop up to html element
                             while (stack.size() > 1)
-                                stack.removeLast();
+                                stack.remove(stack.size()-1);
                             tb.insert(startTag);
                             tb.transition(InFrameset);
                         }
-                    } else if (StringUtil.in(name, Constants.InBodyStartPClosers)) {
+                    } else if (startTag.is(Tag.InBodyStartPClosers)) {
                         if (tb.inButtonScope("p")) {
                             tb.process(new Token.EndTag("p"));
                         }
                         tb.insert(startTag);
-                    } else if (StringUtil.in(name, Constants.Headings)) {
+                    } else if (startTag.is(Tag.Heading)) {
                         if (tb.inButtonScope("p")) {
                             tb.process(new Token.EndTag("p"));
                         }
-                        if (StringUtil.in(tb.currentElement().nodeName(), Constants.Headings)) {
+                        if (tb.currentElement().tag().is(Tag.Heading)) {
                             tb.error(this);
                             tb.pop();
                         }
                         tb.insert(startTag);
-                    } else if (StringUtil.in(name, Constants.InBodyStartPreListing)) {
+                    } else if (startTag.is(Tag.InBodyStartPreListing)) {
                         if (tb.inButtonScope("p")) {
                             tb.process(new Token.EndTag("p"));
                         }
@@ -347,30 +345,30 @@ enum HtmlTreeBuilderState {
                         tb.insertForm(startTag, true);
                     } else if (name.equals("li")) {
                         tb.framesetOk(false);
-                        LinkedList<Element> stack = tb.getStack();
+                        ArrayList<Element> stack = tb.getStack();
                         for (int i = stack.size() - 1; i > 0; i--) {
                             Element el = stack.get(i);
                             if (el.nodeName().equals("li")) {
                                 tb.process(new Token.EndTag("li"));
                                 break;
                             }
-                            if (tb.isSpecial(el) && !StringUtil.in(el.nodeName(), Constants.InBodyStartLiBreakers))
+                            if (tb.isSpecial(el) && !el.tag().is(Tag.InBodyStartLiBreakers))
                                 break;
                         }
                         if (tb.inButtonScope("p")) {
                             tb.process(new Token.EndTag("p"));
                         }
                         tb.insert(startTag);
-                    } else if (StringUtil.in(name, Constants.DdDt)) {
+                    } else if (startTag.is(Tag.DdDt)) {
                         tb.framesetOk(false);
-                        LinkedList<Element> stack = tb.getStack();
+                        ArrayList<Element> stack = tb.getStack();
                         for (int i = stack.size() - 1; i > 0; i--) {
                             Element el = stack.get(i);
-                            if (StringUtil.in(el.nodeName(), Constants.DdDt)) {
+                            if (el.tag().is(Tag.DdDt)) {
                                 tb.process(new Token.EndTag(el.nodeName()));
                                 break;
                             }
-                            if (tb.isSpecial(el) && !StringUtil.in(el.nodeName(), Constants.InBodyStartLiBreakers))
+                            if (tb.isSpecial(el) && !el.tag().is(Tag.InBodyStartLiBreakers))
                                 break;
                         }
                         if (tb.inButtonScope("p")) {
@@ -409,7 +407,7 @@ enum HtmlTreeBuilderState {
                         tb.reconstructFormattingElements();
                         Element a = tb.insert(startTag);
                         tb.pushActiveFormattingElements(a);
-                    } else if (StringUtil.in(name, Constants.Formatters)) {
+                    } else if (startTag.is(Tag.Formatter)) {
                         tb.reconstructFormattingElements();
                         Element el = tb.insert(startTag);
                         tb.pushActiveFormattingElements(el);
@@ -422,7 +420,7 @@ enum HtmlTreeBuilderState {
                         }
                         Element el = tb.insert(startTag);
                         tb.pushActiveFormattingElements(el);
-                    } else if (StringUtil.in(name, Constants.InBodyStartApplets)) {
+                    } else if (startTag.is(Tag.InBodyStartApplets)) {
                         tb.reconstructFormattingElements();
                         tb.insert(startTag);
                         tb.insertMarkerToFormattingElements();
@@ -434,7 +432,7 @@ enum HtmlTreeBuilderState {
                         tb.insert(startTag);
                         tb.framesetOk(false);
                         tb.transition(InTable);
-                    } else if (StringUtil.in(name, Constants.InBodyStartEmptyFormatters)) {
+                    } else if (startTag.is(Tag.InBodyStartEmptyFormatters)) {
                         tb.reconstructFormattingElements();
                         tb.insertEmpty(startTag);
                         tb.framesetOk(false);
@@ -443,7 +441,7 @@ enum HtmlTreeBuilderState {
                         Element el = tb.insertEmpty(startTag);
                         if (!el.attr("type").equalsIgnoreCase("hidden"))
                             tb.framesetOk(false);
-                    } else if (StringUtil.in(name, Constants.InBodyStartMedia)) {
+                    } else if (startTag.is(Tag.InBodyStartMedia)) {
                         tb.insertEmpty(startTag);
                     } else if (name.equals("hr")) {
                         if (tb.inButtonScope("p")) {
@@ -464,22 +462,22 @@ enum HtmlTreeBuilderState {
 
                         tb.tokeniser.acknowledgeSelfClosingFlag();
                         tb.process(new Token.StartTag("form"));
-                        if (startTag.attributes.hasKey("action")) {
+                        if (startTag.getAttributes().hasKey("action")) {
                             Element form = tb.getFormElement();
-                            form.attr("action", startTag.attributes.get("action"));
+                            form.attr("action", startTag.getAttributes().get("action"));
                         }
                         tb.process(new Token.StartTag("hr"));
                         tb.process(new Token.StartTag("label"));
                         // hope you like english.
-                        String prompt = startTag.attributes.hasKey("prompt") ?
-                                startTag.attributes.get("prompt") :
+                        String prompt = startTag.getAttributes().hasKey("prompt") ?
+                                startTag.getAttributes().get("prompt") :
                                 "This is a searchable index. Enter search keywords: ";
 
                         tb.process(new Token.Character(prompt));
 
                         // input
                         Attributes inputAttribs = new Attributes();
-                        for (Attribute attr : startTag.attributes) {
+                        for (Attribute attr : startTag.getAttributes()) {
                             if (!StringUtil.in(attr.getKey(), Constants.InBodyStartInputAttribs))
                                 inputAttribs.put(attr);
                         }
@@ -518,12 +516,12 @@ enum HtmlTreeBuilderState {
                             tb.transition(InSelectInTable);
                         else
                             tb.transition(InSelect);
-                    } else if (StringUtil.in(name, Constants.InBodyStartOptions)) {
+                    } else if (startTag.is(Tag.Option)) {
                         if (tb.currentElement().nodeName().equals("option"))
                             tb.process(new Token.EndTag("option"));
                         tb.reconstructFormattingElements();
                         tb.insert(startTag);
-                    } else if (StringUtil.in(name, Constants.InBodyStartRuby)) {
+                    } else if (startTag.is(Tag.InBodyStartRuby)) {
                         if (tb.inScope("ruby")) {
                             tb.generateImpliedEndTags();
                             if (!tb.currentElement().nodeName().equals("ruby")) {
@@ -542,7 +540,7 @@ enum HtmlTreeBuilderState {
                         // todo: handle A start tag whose tag name is "svg" (xlink, svg)
                         tb.insert(startTag);
                         tb.tokeniser.acknowledgeSelfClosingFlag();
-                    } else if (StringUtil.in(name, Constants.InBodyStartDrop)) {
+                    } else if (startTag.is(Tag.InBodyStartDrop)) {
                         tb.error(this);
                         return false;
                     } else {
@@ -566,7 +564,7 @@ enum HtmlTreeBuilderState {
                         boolean notIgnored = tb.process(new Token.EndTag("body"));
                         if (notIgnored)
                             return tb.process(endTag);
-                    } else if (StringUtil.in(name, Constants.InBodyEndClosers)) {
+                    } else if (endTag.is(Tag.InBodyEndClosers)) {
                         if (!tb.inScope(name)) {
                             // nothing to close
                             tb.error(this);
@@ -611,7 +609,7 @@ enum HtmlTreeBuilderState {
                                 tb.error(this);
                             tb.popStackToClose(name);
                         }
-                    } else if (StringUtil.in(name, Constants.DdDt)) {
+                    } else if (endTag.is(Tag.DdDt)) {
                         if (!tb.inScope(name)) {
                             tb.error(this);
                             return false;
@@ -621,20 +619,20 @@ enum HtmlTreeBuilderState {
                                 tb.error(this);
                             tb.popStackToClose(name);
                         }
-                    } else if (StringUtil.in(name, Constants.Headings)) {
-                        if (!tb.inScope(Constants.Headings)) {
+                    } else if (endTag.is(Tag.Heading)) {
+                        if (!tb.inScope(Tag.Heading)) {
                             tb.error(this);
                             return false;
                         } else {
                             tb.generateImpliedEndTags(name);
                             if (!tb.currentElement().nodeName().equals(name))
                                 tb.error(this);
-                            tb.popStackToClose(Constants.Headings);
+                            tb.popStackToClose(Tag.Heading);
                         }
                     } else if (name.equals("sarcasm")) {
                         // *sigh*
                         return anyOtherEndTag(t, tb);
-                    } else if (StringUtil.in(name, Constants.InBodyEndAdoptionFormatters)) {
+                    } else if (endTag.is(Tag.InBodyEndAdoptionFormatters)) {
                         // Adoption Agency Algorithm.
                         OUTER:
                         for (int i = 0; i < 8; i++) {
@@ -654,7 +652,7 @@ enum HtmlTreeBuilderState {
                             Element furthestBlock = null;
                             Element commonAncestor = null;
                             boolean seenFormattingElement = false;
-                            LinkedList<Element> stack = tb.getStack();
+                            ArrayList<Element> stack = tb.getStack();
                             // the spec doesn't limit to < 64, but in degenerate cases (9000+ stack depth) this prevents
                             // run-aways
                             final int stackSize = stack.size();
@@ -688,7 +686,7 @@ enum HtmlTreeBuilderState {
                                 } else if (node == formatEl)
                                     break INNER;
 
-                                Element replacement = new Element(Tag.valueOf(node.nodeName()), tb.getBaseUri());
+                                Element replacement = tb.copyElement(node, new Attributes(), null);
                                 tb.replaceActiveFormattingElement(node, replacement);
                                 tb.replaceOnStack(node, replacement);
                                 node = replacement;
@@ -699,34 +697,38 @@ enum HtmlTreeBuilderState {
                                 }
                                 if (lastNode.parent() != null)
                                     lastNode.remove();
-                                node.appendChild(lastNode);
+                                if (tb.filterAction(lastNode) == null) // filtered elements stay out of the tree
+                                    node.appendChild(lastNode);
 
                                 lastNode = node;
                             }
 
-                            if (StringUtil.in(commonAncestor.nodeName(), Constants.InBodyEndTableFosters)) {
-                                if (lastNode.parent() != null)
-                                    lastNode.remove();
+                            if (lastNode.parent() != null)
+                                lastNode.remove();
+                            if (tb.filterAction(lastNode) != null) {
+                                // filtered elements stay out of the tree
+                            } else if (commonAncestor.tag().is(Tag.InBodyEndTableFosters)) {
                                 tb.insertInFosterParent(lastNode);
                             } else {
-                                if (lastNode.parent() != null)
-                                    lastNode.remove();
                                 commonAncestor.appendChild(lastNode);
                             }
 
-                            Element adopter = new Element(formatEl.tag(), tb.getBaseUri());
-                            adopter.attributes().addAll(formatEl.attributes());
-                            Node[] childNodes = furthestBlock.childNodes().toArray(new Node[furthestBlock.childNodeSize()]);
-                            for (Node childNode : childNodes) {
-                                adopter.appendChild(childNode); // append will reparent. thus the clone to avoid concurrent mod.
+                            Attributes adopterAttributes = new Attributes();
+                            adopterAttributes.addAll(formatEl.attributes());
+                            Element adopter = tb.copyElement(formatEl, adopterAttributes, tb.filterAction(furthestBlock));
+                            if (tb.filterAction(adopter) == null) {
+                                Node[] childNodes = furthestBlock.childNodes().toArray(new Node[furthestBlock.childNodeSize()]);
+                                for (Node childNode : childNodes) {
+                                    adopter.appendChild(childNode); // append will reparent. thus the clone to avoid concurrent mod.
+                                }
+                                furthestBlock.appendChild(adopter);
                             }
-                            furthestBlock.appendChild(adopter);
                             tb.removeFromActiveFormattingElements(formatEl);
                             // todo: insert the new element into the list of active formatting elements at the position of the aforementioned bookmark.
                             tb.removeFromStack(formatEl);
                             tb.insertOnStackAfter(furthestBlock, adopter);
                         }
-                    } else if (StringUtil.in(name, Constants.InBodyStartApplets)) {
+                    } else if (endTag.is(Tag.InBodyStartApplets)) {
                         if (!tb.inScope("name")) {
                             if (!tb.inScope(name)) {
                                 tb.error(this);
@@ -757,10 +759,9 @@ enum HtmlTreeBuilderState {
 
         boolean anyOtherEndTag(Token t, HtmlTreeBuilder tb) {
             String name = t.asEndTag().name();
-            DescendableLinkedList<Element> stack = tb.getStack();
-            Iterator<Element> it = stack.descendingIterator();
-            while (it.hasNext()) {
-                Element node = it.next();
+            ArrayList<Element> stack = tb.getStack();
+            for (int pos = stack.size() - 1; pos >= 0; pos--) {
+                Element node = stack.get(pos);
                 if (node.nodeName().equals(name)) {
                     tb.generateImpliedEndTags(name);
                     if (!name.equals(tb.currentElement().nodeName()))
@@ -839,7 +840,7 @@ enum HtmlTreeBuilderState {
                 } else if (StringUtil.in(name, "style", "script")) {
                     return tb.process(t, InHead);
                 } else if (name.equals("input")) {
-                    if (!startTag.attributes.get("type").equalsIgnoreCase("hidden")) {
+                    if (!startTag.getAttributes().get("type").equalsIgnoreCase("hidden")) {
                         return anythingElse(t, tb);
                     } else {
                         tb.insertEmpty(startTag);
@@ -886,7 +887,7 @@ enum HtmlTreeBuilderState {
         boolean anythingElse(Token t, HtmlTreeBuilder tb) {
             tb.error(this);
             boolean processed = true;
-            if (StringUtil.in(tb.currentElement().nodeName(), "table", "tbody", "tfoot", "thead", "tr")) {
+            if (tb.currentElement().tag().is(Tag.InBodyEndTableFosters)) {
                 tb.setFosterInserts(true);
                 processed = tb.process(t, InBody);
                 tb.setFosterInserts(false);
@@ -901,11 +902,11 @@ enum HtmlTreeBuilderState {
             switch (t.type) {
                 case Character:
                     Token.Character c = t.asCharacter();
-                    if (c.getData().equals(nullString)) {
+                    if (nullString.contentEquals(c.getChars())) {
                         tb.error(this);
                         return false;
                     } else {
-                        tb.getPendingTableCharacters().add(c);
+                        tb.getPendingTableCharacters().add(new Token.Character(c.getData())); // copy, as the tokeniser reuses c
                     }
                     break;
                 default:
@@ -914,7 +915,7 @@ enum HtmlTreeBuilderState {
                             if (!isWhitespace(character)) {
                                 // InTable anything else section:
                                 tb.error(this);
-                                if (StringUtil.in(tb.currentElement().nodeName(), "table", "tbody", "tfoot", "thead", "tr")) {
+                                if (tb.currentElement().tag().is(Tag.InBodyEndTableFosters)) {
                                     tb.setFosterInserts(true);
                                     tb.process(character, InBody);
                                     tb.setFosterInserts(false);
@@ -1205,7 +1206,7 @@ enum HtmlTreeBuilderState {
             switch (t.type) {
                 case Character:
                     Token.Character c = t.asCharacter();
-                    if (c.getData().equals(nullString)) {
+                    if (nullString.contentEquals(c.getChars())) {
                         tb.error(this);
                         return false;
                     } else {
@@ -1448,9 +1449,9 @@ enum HtmlTreeBuilderState {
 
     abstract boolean process(Token t, HtmlTreeBuilder tb);
 
-    private static boolean isWhitespace(Token t) {
+    static boolean isWhitespace(Token t) {
         if (t.isCharacter()) {
-            String data = t.asCharacter().getData();
+            CharSequence data = t.asCharacter().getChars();
             // todo: this checks more than spec - "\t", "\n", "\f", "\r", " "
             for (int i = 0; i < data.length(); i++) {
                 char c = data.charAt(i);
@@ -1479,26 +1480,6 @@ enum HtmlTreeBuilderState {
     // lists of tags to search through. A little harder to read here, but causes less GC than dynamic varargs.
     // was contributing around 10% of parse GC load.
     private static final class Constants {
-        private static final String[] InBodyStartToHead = new String[]{"base", "basefont", "bgsound", "command", "link", "meta", "noframes", "script", "style", "title"};
-        private static final String[] InBodyStartPClosers = new String[]{"address", "article", "aside", "blockquote", "center", "details", "dir", "div", "dl",
-                "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol",
-                "p", "section", "summary", "ul"};
-        private static final String[] Headings = new String[]{"h1", "h2", "h3", "h4", "h5", "h6"};
-        private static final String[] InBodyStartPreListing = new String[]{"pre", "listing"};
-        private static final String[] InBodyStartLiBreakers = new String[]{"address", "div", "p"};
-        private static final String[] DdDt = new String[]{"dd", "dt"};
-        private static final String[] Formatters = new String[]{"b", "big", "code", "em", "font", "i", "s", "small", "strike", "strong", "tt", "u"};
-        private static final String[] InBodyStartApplets = new String[]{"applet", "marquee", "object"};
-        private static final String[] InBodyStartEmptyFormatters = new String[]{"area", "br", "embed", "img", "keygen", "wbr"};
-        private static final String[] InBodyStartMedia = new String[]{"param", "source", "track"};
         private static final String[] InBodyStartInputAttribs = new String[]{"name", "action", "prompt"};
-        private static final String[] InBodyStartOptions = new String[]{"optgroup", "option"};
-        private static final String[] InBodyStartRuby = new String[]{"rp", "rt"};
-        private static final String[] InBodyStartDrop = new String[]{"caption", "col", "colgroup", "frame", "head", "tbody", "td", "tfoot", "th", "thead", "tr"};
-        private static final String[] InBodyEndClosers = new String[]{"address", "article", "aside", "blockquote", "button", "center", "details", "dir", "div",
-                "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "listing", "menu",
-                "nav", "ol", "pre", "section", "summary", "ul"};
-        private static final String[] InBodyEndAdoptionFormatters = new String[]{"a", "b", "big", "code", "em", "font", "i", "nobr", "s", "small", "strike", "strong", "tt", "u"};
-        private static final String[] InBodyEndTableFosters = new String[]{"table", "tbody", "tfoot", "thead", "tr"};
     }
 }
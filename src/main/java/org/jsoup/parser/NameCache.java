@@ -0,0 +1,99 @@
+package org.jsoup.parser;
+
+/**
+ * A per-parse table of canonical tag and attribute names. Names are looked up straight from a range of the input
+ * buffer, lower-casing as they are compared, so a name that has been seen before is returned without allocating a new
+ * String. As each name has one instance, later equals checks against it are satisfied by identity.
+ */
+final class NameCache {
+    private static final int maxNameLength = 32; // longer names are rare, not worth caching
+    private static final int maxTableSize = 2048; // caps growth, so input with many distinct names can't grow it unbounded
+
+    private String[] table = new String[256];
+    private int count;
+
+    /**
+     * Get the canonical, lower-cased name for a range of chars.
+     * @param chars char buffer
+     * @param offset start of the name
+     * @param len length of the name
+     * @return the lower-cased name
+     */
+    String lookup(char[] chars, int offset, int len) {
+        if (len <= 0)
+            return "";
+        if (len > maxNameLength)
+            return lowerCase(chars, offset, len);
+
+        int hash = 0;
+        for (int i = offset; i < offset + len; i++) {
+            char c = chars[i];
+            if (c >= 128) // non-ascii: leave to the full case mapping, uncached
+                return new String(chars, offset, len).toLowerCase();
+            hash = 31 * hash + lowerCase(c);
+        }
+
+        int mask = table.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String entry;
+        while ((entry = table[slot]) != null) {
+            if (matches(entry, chars, offset, len))
+                return entry;
+            slot = (slot + 1) & mask;
+        }
+
+        String name = lowerCase(chars, offset, len);
+        if (count >= table.length / 2) { // keep probe runs short
+            if (table.length >= maxTableSize)
+                return name;
+            grow();
+        }
+        insert(name);
+        return name;
+    }
+
+    private void insert(String name) {
+        int hash = name.hashCode(); // same as the hash computed in lookup, as the name is lower-case ascii
+        int mask = table.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (table[slot] != null)
+            slot = (slot + 1) & mask;
+        table[slot] = name;
+        count++;
+    }
+
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        count = 0;
+        for (String name : old) {
+            if (name != null)
+                insert(name);
+        }
+    }
+
+    private static boolean matches(String entry, char[] chars, int offset, int len) {
+        if (entry.length() != len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (entry.charAt(i) != lowerCase(chars[offset + i]))
+                return false;
+        }
+        return true;
+    }
+
+    private static String lowerCase(char[] chars, int offset, int len) {
+        char[] lower = new char[len];
+        for (int i = 0; i < len; i++) {
+            char c = chars[offset + i];
+            if (c >= 128)
+                return new String(chars, offset, len).toLowerCase();
+            lower[i] = lowerCase(c);
+        }
+        return new String(lower);
+    }
+
+    private static char lowerCase(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+}
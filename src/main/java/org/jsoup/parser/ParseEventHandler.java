@@ -0,0 +1,54 @@
+package org.jsoup.parser;
+
+import org.jsoup.nodes.Attributes;
+
+/**
+ * Receives the content of a document as a stream of events, as it is parsed, rather than as a built
+ * {@link org.jsoup.nodes.Document}. Use with {@link Parser#parseInput(String, String, ParseEventHandler)}.
+ * <p>
+ * Events are reported after the tree builder has applied its corrections (implied and misnested tags, optional end
+ * tags, etc.), so they are always well nested, and describe the document as it would be built. Only the open elements
+ * are held while parsing, so memory use does not grow with the size of the document.
+ * </p>
+ * <p>
+ * Because each event is reported as its node is inserted, tree corrections that later move content are not reflected:
+ * content that would be foster parented out of a table is reported in place, and content in misnested formatting tags
+ * (e.g. {@code <b><p>One</b>Two}) is reported where it was started, without the formatting elements that the tree
+ * builder re-creates around it.
+ * </p>
+ */
+public interface ParseEventHandler {
+    /**
+     * Called when an element is started.
+     * @param name the lower-case tag name (e.g. {@code div})
+     * @param attributes the element's attributes. Safe to keep.
+     */
+    void startElement(String name, Attributes attributes);
+
+    /**
+     * Called when an element is ended, after all of its content has been reported.
+     * @param name the lower-case tag name
+     */
+    void endElement(String name);
+
+    /**
+     * Called for text content, with entities decoded. Also called for the content of data elements such as
+     * {@code script} and {@code style}. A run of text may be reported in more than one call.
+     * @param text the text
+     */
+    void text(String text);
+
+    /**
+     * Called for a comment.
+     * @param data the comment's content, without the {@code <!--} and {@code -->}
+     */
+    void comment(String data);
+
+    /**
+     * Called for a doctype.
+     * @param name the doctype name (e.g. {@code html})
+     * @param publicId the public ID; empty if not set
+     * @param systemId the system ID; empty if not set
+     */
+    void doctype(String name, String publicId, String systemId);
+}
@@ -0,0 +1,44 @@
+package org.jsoup.parser;
+
+import org.jsoup.nodes.Attributes;
+
+/**
+ * Decides, as an HTML document is parsed, which content to keep. Content that is filtered out is never added to the
+ * Document, so a filter that drops unwanted subtrees (scripts, styles, SVG, ad containers...) keeps the built DOM
+ * small, rather than removing that content after parsing. Set with {@link Parser#setFilter(ParseFilter)}.
+ * <p>
+ * Filtered elements are still tracked by the tree builder while they are open, so the kept content is structured by
+ * the same rules as in an unfiltered parse. Content is filtered by the elements it is in as it is parsed; in the rare
+ * cases that the tree builder later moves content (e.g. misnested formatting tags), that move does not re-filter it.
+ * </p>
+ */
+public interface ParseFilter {
+    /**
+     * What to do with an element and its content.
+     */
+    enum Action {
+        /** Keep the element; its content is filtered in turn. */
+        keep,
+        /** Drop the element, but keep its text, in the element's parent. Child elements are dropped, and their text
+         kept, unless the filter skips them. */
+        keepText,
+        /** Drop the element and all of its content. */
+        skip
+    }
+
+    /**
+     * Called when an element is started, to decide if it is kept. Not called for elements within a skipped element.
+     * @param name the lower-case tag name (e.g. {@code div})
+     * @param attributes the element's attributes
+     * @return the action to take for the element and its content
+     */
+    Action element(String name, Attributes attributes);
+
+    /**
+     * Called for a comment, to decide if it is kept. Not called for comments within a filtered element, which are
+     * always dropped.
+     * @param data the comment's content
+     * @return true to keep the comment
+     */
+    boolean comment(String data);
+}
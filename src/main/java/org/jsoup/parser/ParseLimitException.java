@@ -0,0 +1,10 @@
+package org.jsoup.parser;
+
+/**
+ * Signals that a parse exceeded one of its {@link ParseLimits}, with the fail policy.
+ */
+public class ParseLimitException extends RuntimeException {
+    public ParseLimitException(String message) {
+        super(message);
+    }
+}
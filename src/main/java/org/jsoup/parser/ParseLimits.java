@@ -0,0 +1,210 @@
+package org.jsoup.parser;
+
+import org.jsoup.helper.Validate;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Limits on the resources a parse may use, to bound the time and memory spent on hostile or broken input (e.g. a page of
+ * a hundred thousand nested {@code div}s). Set with {@link Parser#setLimits(ParseLimits)}. By default, nothing is
+ * limited.
+ * <p>
+ * When a limit is exceeded, the parse either fails with a {@link ParseLimitException}, or truncates the content over
+ * the limit and carries on, according to the {@link #policy() policy}. E.g.:
+ * {@code Parser.htmlParser().setLimits(new ParseLimits().maxDepth(512).maxNodes(100000).policy(Policy.truncate))}
+ * </p>
+ */
+public class ParseLimits {
+    /**
+     * What to do when a limit is exceeded.
+     */
+    public enum Policy {
+        /** Throw a {@link ParseLimitException}. */
+        fail,
+        /** Drop what is over the limit, and return the document parsed within it. */
+        truncate
+    }
+
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxNodes = Integer.MAX_VALUE;
+    private int maxAttributes = Integer.MAX_VALUE;
+    private int maxAttributeValueLength = Integer.MAX_VALUE;
+    private int maxInputLength = Integer.MAX_VALUE;
+    private Policy policy = Policy.fail;
+
+    /**
+     * Create limits with nothing limited, and the fail policy.
+     */
+    public ParseLimits() {}
+
+    /**
+     * Get the maximum depth of open elements.
+     * @return the maximum depth
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Set the maximum depth of open elements (counting the {@code html} and {@code body} elements). Void and self
+     * closing elements don't open, so aren't limited. When truncating, an element that would go deeper is dropped, and
+     * its content is added to the deepest element within the limit.
+     * @param maxDepth maximum depth. Must be > 0.
+     * @return this, for chaining
+     */
+    public ParseLimits maxDepth(int maxDepth) {
+        Validate.isTrue(maxDepth > 0, "Max depth must be positive");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of nodes in the document.
+     * @return the maximum node count
+     */
+    public int maxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Set the maximum number of nodes (elements, text, comments...) added to the document. It is checked after each
+     * token, and one token can add a few nodes (e.g. implied elements), so the count can go a little over the limit.
+     * When truncating, the parse ends once the limit is reached, as if the input ended there.
+     * @param maxNodes maximum node count. Must be > 0.
+     * @return this, for chaining
+     */
+    public ParseLimits maxNodes(int maxNodes) {
+        Validate.isTrue(maxNodes > 0, "Max nodes must be positive");
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of attributes on an element.
+     * @return the maximum attribute count
+     */
+    public int maxAttributes() {
+        return maxAttributes;
+    }
+
+    /**
+     * Set the maximum number of attributes on an element. When truncating, the attributes after the maximum are dropped.
+     * @param maxAttributes maximum attribute count. Must be >= 0.
+     * @return this, for chaining
+     */
+    public ParseLimits maxAttributes(int maxAttributes) {
+        Validate.isTrue(maxAttributes >= 0, "Max attributes must not be negative");
+        this.maxAttributes = maxAttributes;
+        return this;
+    }
+
+    /**
+     * Get the maximum length of an attribute value.
+     * @return the maximum value length
+     */
+    public int maxAttributeValueLength() {
+        return maxAttributeValueLength;
+    }
+
+    /**
+     * Set the maximum length of an attribute value, in chars, as it appears in the input (before character references
+     * are decoded). When truncating, the value is cut to the maximum length.
+     * @param maxAttributeValueLength maximum value length. Must be >= 0.
+     * @return this, for chaining
+     */
+    public ParseLimits maxAttributeValueLength(int maxAttributeValueLength) {
+        Validate.isTrue(maxAttributeValueLength >= 0, "Max attribute value length must not be negative");
+        this.maxAttributeValueLength = maxAttributeValueLength;
+        return this;
+    }
+
+    /**
+     * Get the maximum length of the input.
+     * @return the maximum input length
+     */
+    public int maxInputLength() {
+        return maxInputLength;
+    }
+
+    /**
+     * Set the maximum length of the input, in chars. When truncating, only that much of the input is read, and parsed
+     * as if it were the whole input. A Reader input is read no further than one char past the maximum.
+     * @param maxInputLength maximum input length. Must be >= 0.
+     * @return this, for chaining
+     */
+    public ParseLimits maxInputLength(int maxInputLength) {
+        Validate.isTrue(maxInputLength >= 0, "Max input length must not be negative");
+        this.maxInputLength = maxInputLength;
+        return this;
+    }
+
+    /**
+     * Get the policy for when a limit is exceeded.
+     * @return the policy. Default is {@link Policy#fail}.
+     */
+    public Policy policy() {
+        return policy;
+    }
+
+    /**
+     * Set the policy for when a limit is exceeded.
+     * @param policy fail, or truncate
+     * @return this, for chaining
+     */
+    public ParseLimits policy(Policy policy) {
+        Validate.notNull(policy);
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * Called when a limit is exceeded: throws if failing, else returns, for the caller to truncate.
+     * @param limit description of the limit, for the exception message
+     */
+    void exceeded(String limit) {
+        if (policy == Policy.fail)
+            throw new ParseLimitException("Parse limit exceeded: " + limit);
+    }
+
+    String limit(String input) {
+        if (input.length() <= maxInputLength)
+            return input;
+        exceeded("max input length of " + maxInputLength);
+        return input.substring(0, maxInputLength);
+    }
+
+    Reader limit(Reader input) {
+        return maxInputLength == Integer.MAX_VALUE ? input : new LimitedReader(input);
+    }
+
+    // reads up to the max input length; then checks if there is more, and ends the input
+    private class LimitedReader extends Reader {
+        private final Reader in;
+        private int remaining = maxInputLength;
+
+        LimitedReader(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (remaining == 0) {
+                if (in.read() != -1)
+                    exceeded("max input length of " + maxInputLength);
+                return -1;
+            }
+            int read = in.read(buf, off, Math.min(len, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 
+import java.io.Reader;
 import java.util.List;
 
 /**
@@ -12,10 +13,21 @@ import java.util.List;
  */
 public class Parser {
     private static final int DEFAULT_MAX_ERRORS = 0; // by default, error tracking is disabled.
+    private static final ThreadLocal<Parser> pooledParsers = new ThreadLocal<Parser>() {
+        @Override
+        protected Parser initialValue() {
+            return htmlParser();
+        }
+    };
     
     private TreeBuilder treeBuilder;
     private int maxErrors = DEFAULT_MAX_ERRORS;
     private ParseErrorList errors;
+    private ParseFilter filter;
+    private StopCondition stopCondition;
+    private boolean sharedSourceText;
+    private boolean lean;
+    private ParseLimits limits;
 
     /**
      * Create a new Parser, using the specified TreeBuilder
@@ -26,11 +38,62 @@ public class Parser {
     }
     
     public Document parseInput(String html, String baseUri) {
-        errors = isTrackErrors() ? ParseErrorList.tracking(maxErrors) : ParseErrorList.noTracking();
+        initialiseParse();
         Document doc = treeBuilder.parse(html, baseUri, errors);
         return doc;
     }
 
+    /**
+     * Parse HTML from a Reader. Input is read incrementally through a bounded buffer, so the whole document does not
+     * need to be held in memory as a String before parsing. The Reader is not closed.
+     * @param inputHtml Reader to read HTML from
+     * @param baseUri base URI of document (i.e. original fetch location), for resolving relative URLs.
+     * @return parsed Document
+     * @throws org.jsoup.UncheckedIOException if the Reader throws an IOException
+     */
+    public Document parseInput(Reader inputHtml, String baseUri) {
+        initialiseParse();
+        Document doc = treeBuilder.parse(inputHtml, baseUri, errors);
+        return doc;
+    }
+
+    /**
+     * Parse HTML, reporting its content to an event handler rather than building a Document. No nodes are kept as the
+     * content is reported, so memory use stays flat however large the input; useful when only a few values are needed
+     * from each of many documents.
+     * @param html HTML to parse
+     * @param baseUri base URI of document, for resolving relative URLs in the reported attributes.
+     * @param handler handler to receive the events
+     * @see ParseEventHandler
+     */
+    public void parseInput(String html, String baseUri, ParseEventHandler handler) {
+        initialiseParse();
+        treeBuilder.parse(html, baseUri, errors, handler);
+    }
+
+    /**
+     * Parse HTML from a Reader, reporting its content to an event handler rather than building a Document. The input
+     * is read incrementally, and the Reader is not closed.
+     * @param inputHtml Reader to read HTML from
+     * @param baseUri base URI of document, for resolving relative URLs in the reported attributes.
+     * @param handler handler to receive the events
+     * @throws org.jsoup.UncheckedIOException if the Reader throws an IOException
+     * @see ParseEventHandler
+     */
+    public void parseInput(Reader inputHtml, String baseUri, ParseEventHandler handler) {
+        initialiseParse();
+        treeBuilder.parse(inputHtml, baseUri, errors, handler);
+    }
+
+    private void initialiseParse() {
+        errors = isTrackErrors() ? ParseErrorList.tracking(maxErrors) : ParseErrorList.noTracking();
+        treeBuilder.filter = filter;
+        treeBuilder.stopCondition = stopCondition;
+        treeBuilder.sharedSourceText = sharedSourceText;
+        treeBuilder.lean = lean;
+        treeBuilder.limits = limits != null ? limits : TreeBuilder.noLimits;
+    }
+
     // gets & sets
     /**
      * Get the TreeBuilder currently in use.
@@ -68,6 +131,121 @@ public class Parser {
         return this;
     }
 
+    /**
+     * Get the filter that decides which content is kept.
+     * @return current filter; null if all content is kept.
+     */
+    public ParseFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Set a filter to decide, as the input is parsed, which elements and comments are kept. Filtered content is never
+     * added to the Document, so the DOM is smaller than one parsed in full and then pruned. Used by the HTML parser;
+     * the XML parser keeps all content.
+     * @param filter the filter to use for the next parse, or null to keep all content
+     * @return this, for chaining
+     * @see ParseFilter
+     */
+    public Parser setFilter(ParseFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Get the condition that ends a parse early.
+     * @return current stop condition; null if input is parsed to its end.
+     */
+    public StopCondition getStopCondition() {
+        return stopCondition;
+    }
+
+    /**
+     * Set a condition to stop parsing once it is met, without reading the rest of the input. The partial document is
+     * returned with its open elements closed, as if the input had ended there. E.g. to parse just the head:
+     * {@code Parser.htmlParser().setStopCondition(StopCondition.afterHead)}.
+     * @param stopCondition the condition for the next parse, or null to parse all of the input
+     * @return this, for chaining
+     * @see StopCondition
+     */
+    public Parser setStopCondition(StopCondition stopCondition) {
+        this.stopCondition = stopCondition;
+        return this;
+    }
+
+    /**
+     * Check if text nodes hold views of the input, rather than copies of their text.
+     * @return true if shared source text mode is enabled; default false.
+     */
+    public boolean isSharedSourceText() {
+        return sharedSourceText;
+    }
+
+    /**
+     * Enable or disable shared source text mode. When enabled, each run of text (that has no character references) is
+     * held by its text node as a view of the parsed input, which the document keeps one copy of, rather than copied out
+     * into a String. The String is created when the text is read ({@link org.jsoup.nodes.TextNode#getWholeText()},
+     * {@code text()}, output), and not kept; the view is dropped when the text is set.
+     * <p>
+     * This saves memory and copying for documents that are mostly text. But the whole input (including its markup) is
+     * held for as long as any text node of the document is, so for documents that are mostly markup, and documents that
+     * are read many times, it is a loss. Only applies to input that is fully buffered, e.g. a String, or small Reader
+     * input; otherwise, text is copied as usual.
+     * </p>
+     * @param sharedSourceText true to enable for the next parse, false (default) to copy text out of the input
+     * @return this, for chaining
+     */
+    public Parser setSharedSourceText(boolean sharedSourceText) {
+        this.sharedSourceText = sharedSourceText;
+        return this;
+    }
+
+    /**
+     * Check if lean parsing is enabled.
+     * @return true if comments and unrendered whitespace are dropped; default false.
+     */
+    public boolean isLean() {
+        return lean;
+    }
+
+    /**
+     * Enable or disable lean parsing, which builds a smaller DOM for when only the content of a document is wanted (e.g.
+     * for scraping). Comments are dropped, and the HTML parser drops the whitespace-only text that a browser would not
+     * render: at the start of a block element, and before a block (e.g. the newlines and indents between {@code <li>}
+     * tags). The {@code text()} of the document is unchanged, but its HTML is not the same as the input.
+     * <p>
+     * When parsing with a {@link ParseEventHandler}, comments are dropped, but whitespace is reported as usual. The XML
+     * parser keeps whitespace, as it can't tell where it is significant; XML declarations are kept.
+     * </p>
+     * @param lean true to enable for the next parse, false (default) to keep all comments and whitespace
+     * @return this, for chaining
+     */
+    public Parser setLean(boolean lean) {
+        this.lean = lean;
+        return this;
+    }
+
+    /**
+     * Get the limits on the resources a parse may use.
+     * @return current limits; null if not limited.
+     */
+    public ParseLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Set limits on the resources a parse may use (depth, nodes, attributes, input length), to bound the cost of
+     * parsing untrusted input. E.g.
+     * {@code parser.setLimits(new ParseLimits().maxDepth(512).maxNodes(100000).policy(ParseLimits.Policy.truncate))}.
+     * @param limits the limits for the next parse, or null for no limits
+     * @return this, for chaining
+     * @see ParseLimits
+     */
+    public Parser setLimits(ParseLimits limits) {
+        this.limits = limits;
+        return this;
+    }
+
     /**
      * Retrieve the parse errors, if any, from the last parse.
      * @return list of parse errors, up to the size of the maximum errors tracked.
@@ -169,6 +347,42 @@ public class Parser {
         return new Parser(new HtmlTreeBuilder());
     }
 
+    /**
+     * Get this thread's pooled HTML parser. Its tree builder, tokeniser, and input buffer are reused from parse to
+     * parse, rather than created and grown again for each document, which saves allocation when one thread parses many
+     * documents. Each call resets the parser's settings (error tracking, filter, stop condition, etc.) to the defaults.
+     * <p>
+     * The parser must only be used by the calling thread, and only until its next call to {@code pooled()}. If called
+     * while this thread's pooled parser is in the middle of a parse (e.g. from a {@link ParseEventHandler}), a new
+     * parser is returned.
+     * </p>
+     * @return this thread's HTML parser, ready for a new parse
+     */
+    public static Parser pooled() {
+        Parser parser = pooledParsers.get();
+        if (!(parser.treeBuilder instanceof HtmlTreeBuilder))
+            parser.treeBuilder = new HtmlTreeBuilder();
+        else if (parser.treeBuilder.isParsing())
+            return htmlParser();
+        return parser.reset();
+    }
+
+    /**
+     * Reset this parser's settings (error tracking, filter, stop condition, etc.) to the defaults, ready for a new
+     * parse. Its tree builder, and the state that it reuses from parse to parse, are kept.
+     * @return this parser, for chaining
+     */
+    public Parser reset() {
+        maxErrors = DEFAULT_MAX_ERRORS;
+        errors = null;
+        filter = null;
+        stopCondition = null;
+        sharedSourceText = false;
+        lean = false;
+        limits = null;
+        return this;
+    }
+
     /**
      * Create a new XML parser. This parser assumes no knowledge of the incoming tags and does not treat it as HTML,
      * rather creates a simple tree directly from the input.
@@ -0,0 +1,37 @@
+package org.jsoup.parser;
+
+/**
+ * A run of text viewed in place in the input buffer of a parse, rather than copied out. Used for text nodes in shared
+ * source text mode; the buffer must not be changed once viewed.
+ */
+final class SourceText implements CharSequence {
+    private final char[] source;
+    private final int offset;
+    private final int length;
+
+    SourceText(char[] source, int offset, int length) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        return source[offset + index];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        return new SourceText(source, offset + start, end - start);
+    }
+
+    public String toString() {
+        return new String(source, offset, length);
+    }
+}
@@ -0,0 +1,34 @@
+package org.jsoup.parser;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Decides when to stop parsing, so that when only part of a document is needed (e.g. its {@code head}), the rest of
+ * the input is not read. Set with {@link Parser#setStopCondition(StopCondition)}.
+ * <p>
+ * The condition is checked after each token (tag, run of text, comment...) is added to the tree. Once it is met, the
+ * parse finishes as if the input ended there: open elements are closed, and the partial Document is returned.
+ * </p>
+ */
+public interface StopCondition {
+    /**
+     * Stops once the document's {@code head} is complete, i.e. when the first content of the {@code body} (or
+     * {@code frameset}) is parsed. That first element is kept in the document, but its content is not parsed.
+     */
+    StopCondition afterHead = new StopCondition() {
+        public boolean stop(Document doc, Element current) {
+            return current != null && !StringUtil.in(current.nodeName(),
+                    "html", "head", "title", "style", "script", "noscript"); // the elements that can be open in a head
+        }
+    };
+
+    /**
+     * Check if the parse should stop.
+     * @param doc the document parsed so far. When reporting events to a {@link ParseEventHandler}, this is empty.
+     * @param current the current (innermost open) element; null until the {@code html} element is started
+     * @return true to stop parsing
+     */
+    boolean stop(Document doc, Element current);
+}
@@ -12,6 +12,32 @@ import java.util.Map;
  */
 public class Tag {
     private static final Map<String, Tag> tags = new HashMap<String, Tag>(); // map of known tags
+    private static final Map<String, Integer> categoryIndex = new HashMap<String, Integer>(); // tag name to tree builder categories
+
+    // Tree builder categories, held as bits, so that scope and dispatch checks in the tree builder are bit tests rather
+    // than scans of tag name lists. Names in a category need not otherwise be known tags (e.g. marquee).
+    static final int Special = 1;
+    static final int ScopeBoundary = 1 << 1; // default scope: applet, caption, html, table, td, th, marquee, object
+    static final int ListScopeBoundary = 1 << 2; // in addition to default scope
+    static final int ButtonScopeBoundary = 1 << 3; // in addition to default scope
+    static final int TableScopeBoundary = 1 << 4;
+    static final int Option = 1 << 5; // optgroup, option. select scope is all except these
+    static final int ImpliedEndTag = 1 << 6;
+    static final int InBodyStartToHead = 1 << 7;
+    static final int InBodyStartPClosers = 1 << 8;
+    static final int Heading = 1 << 9;
+    static final int InBodyStartPreListing = 1 << 10;
+    static final int InBodyStartLiBreakers = 1 << 11;
+    static final int DdDt = 1 << 12;
+    static final int Formatter = 1 << 13;
+    static final int InBodyStartApplets = 1 << 14;
+    static final int InBodyStartEmptyFormatters = 1 << 15;
+    static final int InBodyStartMedia = 1 << 16;
+    static final int InBodyStartRuby = 1 << 17;
+    static final int InBodyStartDrop = 1 << 18;
+    static final int InBodyEndClosers = 1 << 19;
+    static final int InBodyEndAdoptionFormatters = 1 << 20;
+    static final int InBodyEndTableFosters = 1 << 21;
 
     private String tagName;
     private boolean isBlock = true; // block or inline
@@ -23,9 +49,11 @@ public class Tag {
     private boolean preserveWhitespace = false; // for pre, textarea, script etc
     private boolean formList = false; // a control that appears in forms: input, textarea, output etc
     private boolean formSubmit = false; // a control that can be submitted in a form: input etc
+    private final int categories; // tree builder categories
 
     private Tag(String tagName) {
         this.tagName = tagName.toLowerCase();
+        categories = categoriesOf(this.tagName);
     }
 
     /**
@@ -176,6 +204,25 @@ public class Tag {
         return this;
     }
 
+    /**
+     * Check if this tag is in any of the tree builder categories.
+     * @param category category bits, e.g. {@code Tag.Special}
+     * @return if in any of the categories
+     */
+    boolean is(int category) {
+        return (categories & category) != 0;
+    }
+
+    /**
+     * Get the tree builder categories of a tag name.
+     * @param tagName lower-case tag name
+     * @return category bits; 0 if in none
+     */
+    static int categoriesOf(String tagName) {
+        Integer categories = categoryIndex.get(tagName);
+        return categories == null ? 0 : categories;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -253,6 +300,44 @@ public class Tag {
     };
 
     static {
+        // tree builder categories. before tag creation, as tags take their categories on construction
+        category(Special, "address", "applet", "area", "article", "aside", "base", "basefont", "bgsound",
+                "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup", "command", "dd",
+                "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure", "footer", "form",
+                "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html",
+                "iframe", "img", "input", "isindex", "li", "link", "listing", "marquee", "menu", "meta", "nav",
+                "noembed", "noframes", "noscript", "object", "ol", "p", "param", "plaintext", "pre", "script",
+                "section", "select", "style", "summary", "table", "tbody", "td", "textarea", "tfoot", "th", "thead",
+                "title", "tr", "ul", "wbr", "xmp");
+        category(ScopeBoundary, "applet", "caption", "html", "table", "td", "th", "marquee", "object");
+        category(ListScopeBoundary, "ol", "ul");
+        category(ButtonScopeBoundary, "button");
+        category(TableScopeBoundary, "html", "table");
+        category(Option, "optgroup", "option");
+        category(ImpliedEndTag, "dd", "dt", "li", "option", "optgroup", "p", "rp", "rt");
+        category(InBodyStartToHead, "base", "basefont", "bgsound", "command", "link", "meta", "noframes", "script",
+                "style", "title");
+        category(InBodyStartPClosers, "address", "article", "aside", "blockquote", "center", "details", "dir", "div",
+                "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol", "p",
+                "section", "summary", "ul");
+        category(Heading, "h1", "h2", "h3", "h4", "h5", "h6");
+        category(InBodyStartPreListing, "pre", "listing");
+        category(InBodyStartLiBreakers, "address", "div", "p");
+        category(DdDt, "dd", "dt");
+        category(Formatter, "b", "big", "code", "em", "font", "i", "s", "small", "strike", "strong", "tt", "u");
+        category(InBodyStartApplets, "applet", "marquee", "object");
+        category(InBodyStartEmptyFormatters, "area", "br", "embed", "img", "keygen", "wbr");
+        category(InBodyStartMedia, "param", "source", "track");
+        category(InBodyStartRuby, "rp", "rt");
+        category(InBodyStartDrop, "caption", "col", "colgroup", "frame", "head", "tbody", "td", "tfoot", "th",
+                "thead", "tr");
+        category(InBodyEndClosers, "address", "article", "aside", "blockquote", "button", "center", "details", "dir",
+                "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "listing", "menu",
+                "nav", "ol", "pre", "section", "summary", "ul");
+        category(InBodyEndAdoptionFormatters, "a", "b", "big", "code", "em", "font", "i", "nobr", "s", "small",
+                "strike", "strong", "tt", "u");
+        category(InBodyEndTableFosters, "table", "tbody", "tfoot", "thead", "tr");
+
         // creates
         for (String tagName : blockTags) {
             Tag tag = new Tag(tagName);
@@ -303,4 +388,11 @@ public class Tag {
     private static void register(Tag tag) {
         tags.put(tag.tagName, tag);
     }
+
+    private static void category(int category, String... tagNames) {
+        for (String tagName : tagNames) {
+            Integer categories = categoryIndex.get(tagName);
+            categoryIndex.put(tagName, categories == null ? category : categories | category);
+        }
+    }
 }
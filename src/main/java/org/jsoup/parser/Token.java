@@ -17,6 +17,18 @@ abstract class Token {
         return this.getClass().getSimpleName();
     }
 
+    /**
+     * Reset the data represented by this token, for reuse. The tokeniser reuses one instance per token type, as each
+     * token is consumed by the tree builder before the next is read.
+     * @return this, for chaining
+     */
+    abstract Token reset();
+
+    static void reset(StringBuilder sb) {
+        if (sb != null)
+            sb.delete(0, sb.length());
+    }
+
     static class Doctype extends Token {
         final StringBuilder name = new StringBuilder();
         final StringBuilder publicIdentifier = new StringBuilder();
@@ -27,6 +39,15 @@ abstract class Token {
             type = TokenType.Doctype;
         }
 
+        @Override
+        Token reset() {
+            reset(name);
+            reset(publicIdentifier);
+            reset(systemIdentifier);
+            forceQuirks = false;
+            return this;
+        }
+
         String getName() {
             return name.toString();
         }
@@ -46,27 +67,60 @@ abstract class Token {
 
     static abstract class Tag extends Token {
         protected String tagName;
+        private int categories = -1; // tree builder categories of the tag name, looked up on first use
         private String pendingAttributeName; // attribute names are generally caught in one hop, not accumulated
-        private StringBuilder pendingAttributeValue; // but values are accumulated, from e.g. & in hrefs
+        private String pendingAttributeValueS; // values are used as is while caught in one hop
+        private final StringBuilder pendingAttributeValue = new StringBuilder(); // or accumulated, from e.g. & in hrefs
+        private boolean pendingAttributeValueEncoded; // the value holds character references, to decode when read
+        private int pendingAttributeValueLength; // the value's length in the input, bounded as it's read when limited
 
         boolean selfClosing = false;
-        Attributes attributes; // start tags get attributes on construction. End tags get attributes on first new attribute (but only for parser convenience, not used).
+        Attributes attributes; // created on first new attribute. Start tag attributes are handed to the Element; end tag attributes are not used.
+        ParseLimits limits; // limits on the attributes, set by the tokeniser for start tags; null if not limited
+
+        @Override
+        Tag reset() {
+            tagName = null;
+            categories = -1;
+            resetPendingAttribute();
+            selfClosing = false;
+            attributes = null; // not cleared, as may now belong to an Element
+            return this;
+        }
 
         void newAttribute() {
             if (attributes == null)
                 attributes = new Attributes();
 
-            if (pendingAttributeName != null) {
-                Attribute attribute;
-                if (pendingAttributeValue == null)
-                    attribute = new Attribute(pendingAttributeName, "");
+            if (pendingAttributeName != null && !overAttributeLimit()) {
+                String value;
+                if (pendingAttributeValue.length() > 0)
+                    value = pendingAttributeValue.toString();
+                else
+                    value = pendingAttributeValueS != null ? pendingAttributeValueS : "";
+                if (pendingAttributeValueEncoded)
+                    attributes.put(Attribute.createFromEncoded(pendingAttributeName, value)); // held until read
                 else
-                    attribute = new Attribute(pendingAttributeName, pendingAttributeValue.toString());
-                attributes.put(attribute);
+                    attributes.put(pendingAttributeName, value);
             }
+            resetPendingAttribute();
+        }
+
+        // if the tag has the max number of attributes, so the pending one is dropped (or the limit fails). a repeated
+        // name replaces its value, so isn't over
+        private boolean overAttributeLimit() {
+            if (limits == null || attributes.size() < limits.maxAttributes() || attributes.hasKey(pendingAttributeName))
+                return false;
+            limits.exceeded("max attributes of " + limits.maxAttributes());
+            return true;
+        }
+
+        private void resetPendingAttribute() {
             pendingAttributeName = null;
-            if (pendingAttributeValue != null)
-                pendingAttributeValue.delete(0, pendingAttributeValue.length());
+            pendingAttributeValueS = null;
+            reset(pendingAttributeValue);
+            pendingAttributeValueEncoded = false;
+            pendingAttributeValueLength = 0;
         }
 
         void finaliseTag() {
@@ -84,6 +138,7 @@ abstract class Token {
 
         Tag name(String name) {
             tagName = name;
+            categories = -1;
             return this;
         }
 
@@ -91,14 +146,28 @@ abstract class Token {
             return selfClosing;
         }
 
+        /**
+         * Check if this tag's name is in any of the tree builder categories.
+         * @param category category bits, e.g. {@code org.jsoup.parser.Tag.Formatter}
+         * @return if in any of the categories
+         */
+        boolean is(int category) {
+            if (categories == -1)
+                categories = org.jsoup.parser.Tag.categoriesOf(tagName);
+            return (categories & category) != 0;
+        }
+
         @SuppressWarnings({"TypeMayBeWeakened"})
         Attributes getAttributes() {
+            if (attributes == null) // created on demand, as the tag may have had none
+                attributes = new Attributes();
             return attributes;
         }
 
         // these appenders are rarely hit in not null state-- caused by null chars.
         void appendTagName(String append) {
             tagName = tagName == null ? append : tagName.concat(append);
+            categories = -1;
         }
 
         void appendTagName(char append) {
@@ -114,30 +183,64 @@ abstract class Token {
         }
 
         void appendAttributeValue(String append) {
-            ensureAttributeValue();
-            pendingAttributeValue.append(append);
+            int fits = fitting(append.length());
+            if (fits == 0)
+                return;
+            if (fits < append.length())
+                append = append.substring(0, fits);
+            if (pendingAttributeValueS == null && pendingAttributeValue.length() == 0)
+                pendingAttributeValueS = append; // the first hop; copied to the builder if there are more
+            else
+                ensureAttributeValue().append(append);
         }
 
         void appendAttributeValue(char append) {
-            ensureAttributeValue();
-            pendingAttributeValue.append(append);
+            if (fitting(1) == 1)
+                ensureAttributeValue().append(append);
+        }
+
+        /**
+         * Append a decoded character reference.
+         * @param append the decoded chars
+         * @param inputLength the length of the reference in the input, which is what's limited
+         */
+        void appendAttributeValue(char[] append, int inputLength) {
+            if (fitting(inputLength) == inputLength) // a reference isn't cut
+                ensureAttributeValue().append(append);
+        }
+
+        // how much of a run of value input fits within the max value length. the rest is dropped (or the limit fails)
+        private int fitting(int length) {
+            if (limits == null)
+                return length;
+            int room = limits.maxAttributeValueLength() - pendingAttributeValueLength;
+            if (length > room) {
+                limits.exceeded("max attribute value length of " + limits.maxAttributeValueLength());
+                length = room;
+            }
+            pendingAttributeValueLength += length;
+            return length;
         }
 
-        void appendAttributeValue(char[] append) {
-            ensureAttributeValue();
-            pendingAttributeValue.append(append);
+        /**
+         * Mark the pending attribute value as holding undecoded character references, so it will be decoded when read.
+         */
+        void attributeValueEncoded() {
+            pendingAttributeValueEncoded = true;
         }
 
-        private final void ensureAttributeValue() {
-            if (pendingAttributeValue == null)
-                pendingAttributeValue = new StringBuilder();
+        private StringBuilder ensureAttributeValue() {
+            if (pendingAttributeValueS != null) {
+                pendingAttributeValue.append(pendingAttributeValueS);
+                pendingAttributeValueS = null;
+            }
+            return pendingAttributeValue;
         }
     }
 
     static class StartTag extends Tag {
         StartTag() {
             super();
-            attributes = new Attributes();
             type = TokenType.StartTag;
         }
 
@@ -186,6 +289,13 @@ abstract class Token {
             type = TokenType.Comment;
         }
 
+        @Override
+        Token reset() {
+            reset(data);
+            bogus = false;
+            return this;
+        }
+
         String getData() {
             return data.toString();
         }
@@ -197,14 +307,36 @@ abstract class Token {
     }
 
     static class Character extends Token {
-        private final String data;
+        private CharSequence data; // a String; or in shared source text mode, a view of the input
 
-        Character(String data) {
+        Character() {
             type = TokenType.Character;
+        }
+
+        Character(String data) {
+            this();
             this.data = data;
         }
 
+        @Override
+        Token reset() {
+            data = null;
+            return this;
+        }
+
+        Character data(CharSequence data) {
+            this.data = data;
+            return this;
+        }
+
         String getData() {
+            return data.toString();
+        }
+
+        /**
+         * Get the data without copying it into a String, when it is a view of the input.
+         */
+        CharSequence getChars() {
             return data;
         }
 
@@ -218,6 +350,11 @@ abstract class Token {
         EOF() {
             type = Token.TokenType.EOF;
         }
+
+        @Override
+        Token reset() {
+            return this;
+        }
     }
 
     boolean isDoctype() {
@@ -1,7 +1,6 @@
 package org.jsoup.parser;
 
 import org.jsoup.helper.Validate;
-import org.jsoup.nodes.Entities;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -11,25 +10,57 @@ import java.util.List;
  */
 class Tokeniser {
     static final char replacementChar = '\uFFFD'; // replaces null character
+    private static final CharClass notCharRefStarts = CharClass.anyOf('\t', '\n', '\r', '\f', ' ', '<', '&');
+    private static final CharClass attributeNameContinuations = // a ref followed by these in an attribute is left as is
+            CharClass.letters.with(CharClass.digits).with(CharClass.anyOf('=', '-', '_'));
 
     private CharacterReader reader; // html input
     private ParseErrorList errors; // errors found while tokenising
+    final NameCache names = new NameCache(); // canonical tag and attribute names for this parse
 
     private TokeniserState state = TokeniserState.Data; // current tokenisation state
     private Token emitPending; // the token we are about to emit on next read
     private boolean isEmitPending = false;
     private StringBuilder charBuffer = new StringBuilder(); // buffers characters to output as one token
+    private char[] source; // in shared source text mode, the input buffer that runs of text are viewed in, not copied
+    private int runStart = -1, runEnd; // when the pending chars are just a run of the source, its bounds (else -1)
     StringBuilder dataBuffer; // buffers data looking for </script>
 
     Token.Tag tagPending; // tag we are building up
-    Token.Doctype doctypePending; // doctype building up
-    Token.Comment commentPending; // comment building up
-    private Token.StartTag lastStartTag; // the last start tag emitted, to test appropriate end tag
+    private final Token.StartTag startPending = new Token.StartTag(); // token instances are reused, as each is consumed before the next read
+    private final Token.EndTag endPending = new Token.EndTag();
+    private final Token.Character charPending = new Token.Character();
+    private final char[] charRefHolder = new char[1]; // named references are returned in this; callers copy it out at once
+    final Token.Doctype doctypePending = new Token.Doctype(); // doctype building up
+    final Token.Comment commentPending = new Token.Comment(); // comment building up
+    private String lastStartTag; // the last start tag emitted, to test appropriate end tag
+    private String appropriateEndTagSeq; // "</" + lastStartTag, to search raw text for; built on first use
     private boolean selfClosingFlagAcknowledged = true;
+    private boolean decodeAttributesLazily; // if references in attribute values are left for the attribute to decode
 
     Tokeniser(CharacterReader reader, ParseErrorList errors) {
+        reset(reader, errors);
+    }
+
+    /**
+     * Reset this tokeniser to tokenise a new input. Its buffers, reused tokens, and name cache are kept.
+     * @param reader input
+     * @param errors errors list for the new parse
+     */
+    void reset(CharacterReader reader, ParseErrorList errors) {
         this.reader = reader;
         this.errors = errors;
+        decodeAttributesLazily = errors.getMaxSize() == 0; // decoding now reports the reference errors
+        state = TokeniserState.Data;
+        emitPending = null;
+        isEmitPending = false;
+        charBuffer.setLength(0);
+        source = null;
+        runStart = -1;
+        tagPending = null;
+        lastStartTag = null;
+        appropriateEndTagSeq = null;
+        selfClosingFlagAcknowledged = true;
     }
 
     Token read() {
@@ -42,10 +73,14 @@ class Tokeniser {
             state.read(this, reader);
 
         // if emit is pending, a non-character token was found: return any chars in buffer, and leave token for next read:
-        if (charBuffer.length() > 0) {
+        if (runStart != -1) {
+            SourceText text = new SourceText(source, runStart, runEnd - runStart);
+            runStart = -1;
+            return charPending.data(text);
+        } else if (charBuffer.length() > 0) {
             String str = charBuffer.toString();
             charBuffer.delete(0, charBuffer.length());
-            return new Token.Character(str);
+            return charPending.data(str);
         } else {
             isEmitPending = false;
             return emitPending;
@@ -60,7 +95,8 @@ class Tokeniser {
 
         if (token.type == Token.TokenType.StartTag) {
             Token.StartTag startTag = (Token.StartTag) token;
-            lastStartTag = startTag;
+            lastStartTag = startTag.tagName;
+            appropriateEndTagSeq = null;
             if (startTag.selfClosing)
                 selfClosingFlagAcknowledged = false;
         } else if (token.type == Token.TokenType.EndTag) {
@@ -73,17 +109,63 @@ class Tokeniser {
     void emit(String str) {
         // buffer strings up until last string token found, to emit only one token for a run of character refs etc.
         // does not set isEmitPending; read checks that
+        flushRun();
         charBuffer.append(str);
     }
 
     void emit(char[] chars) {
+        flushRun();
         charBuffer.append(chars);
     }
 
     void emit(char c) {
+        flushRun();
         charBuffer.append(c);
     }
 
+    /**
+     * Emits the chars up to any of the stops. In shared source text mode, a run of text that is not joined to other
+     * pending chars is emitted as a view of the source, rather than copied.
+     */
+    void emitToAny(CharacterReader r, CharClass stops) {
+        if (source == null) {
+            emit(r.consumeToAny(stops));
+            return;
+        }
+        int start = r.pos();
+        r.advanceToAny(stops);
+        if (runStart == -1 && charBuffer.length() == 0) {
+            runStart = start;
+            runEnd = r.pos();
+        } else {
+            flushRun();
+            charBuffer.append(source, start, r.pos() - start);
+        }
+    }
+
+    // copies a pending run of the source into the char buffer, to join it with the next chars
+    private void flushRun() {
+        if (runStart != -1) {
+            charBuffer.append(source, runStart, runEnd - runStart);
+            runStart = -1;
+        }
+    }
+
+    /**
+     * Set the limits on tags' attributes for this parse.
+     */
+    void limits(ParseLimits limits) {
+        startPending.limits = limits; // end tag attributes aren't used, so aren't limited
+    }
+
+    /**
+     * Use shared source text mode for this parse: runs of text are emitted as views of the input, which is then held by
+     * the text nodes. Only when the whole input is buffered; otherwise, text is copied as usual.
+     */
+    void shareSource() {
+        source = reader.shareBuffer();
+    }
+
     TokeniserState getState() {
         return state;
     }
@@ -101,12 +183,31 @@ class Tokeniser {
         selfClosingFlagAcknowledged = true;
     }
 
+    /**
+     * Handle the character reference at an {@code &} in an attribute value. Unless errors are being tracked, the
+     * reference is left as is, and the value is decoded by its Attribute if and when it is read.
+     * @param additionalAllowedCharacter the char that ends the value, which is not a reference
+     */
+    void consumeAttributeValueReference(char additionalAllowedCharacter) {
+        if (decodeAttributesLazily) {
+            tagPending.appendAttributeValue('&');
+            tagPending.attributeValueEncoded();
+            return;
+        }
+        int start = reader.pos() - 1; // the &
+        char[] ref = consumeCharacterReference(additionalAllowedCharacter, true);
+        if (ref != null)
+            tagPending.appendAttributeValue(ref, reader.pos() - start);
+        else
+            tagPending.appendAttributeValue('&');
+    }
+
     char[] consumeCharacterReference(Character additionalAllowedCharacter, boolean inAttribute) {
         if (reader.isEmpty())
             return null;
         if (additionalAllowedCharacter != null && additionalAllowedCharacter == reader.current())
             return null;
-        if (reader.matchesAny('\t', '\n', '\r', '\f', ' ', '<', '&'))
+        if (reader.matchesAny(notCharRefStarts))
             return null;
 
         reader.mark();
@@ -118,6 +219,7 @@ class Tokeniser {
                 reader.rewindToMark();
                 return null;
             }
+            reader.unmark(); // committed to this reference; releases the buffer held for rewind
             if (!reader.matchConsume(";"))
                 characterReferenceError("missing semicolon"); // missing semi
             int charval = -1;
@@ -135,31 +237,35 @@ class Tokeniser {
                 return Character.toChars(charval);
             }
         } else { // named
-            // get as many letters as possible, and look for matching entities.
-            String nameRef = reader.consumeLetterThenDigitSequence();
-            boolean looksLegit = reader.matches(';');
-            // found if a base named entity without a ;, or an extended entity with the ;.
-            boolean found = (Entities.isBaseNamedEntity(nameRef) || (Entities.isNamedEntity(nameRef) && looksLegit));
-
-            if (!found) {
-                reader.rewindToMark();
-                if (looksLegit) // named with semicolon
-                    characterReferenceError(String.format("invalid named referenece '%s'", nameRef));
+            // find the longest entity name at this position. base entities match without a ;, others need the ;.
+            int entity = reader.consumeEntity(EntityTrie.entities);
+            if (entity == EntityTrie.noMatch) {
+                if (errors.canAddError()) { // only read the name for the message when it will be kept
+                    String nameRef = reader.consumeLetterThenDigitSequence();
+                    boolean looksLegit = reader.matches(';');
+                    reader.rewindToMark();
+                    if (looksLegit) // named with semicolon
+                        characterReferenceError(String.format("invalid named referenece '%s'", nameRef));
+                } else {
+                    reader.rewindToMark();
+                }
                 return null;
             }
-            if (inAttribute && (reader.matchesLetter() || reader.matchesDigit() || reader.matchesAny('=', '-', '_'))) {
+            if (inAttribute && reader.matchesAny(attributeNameContinuations)) {
                 // don't want that to match
                 reader.rewindToMark();
                 return null;
             }
+            reader.unmark();
             if (!reader.matchConsume(";"))
                 characterReferenceError("missing semicolon"); // missing semi
-            return new char[]{Entities.getCharacterByName(nameRef)};
+            charRefHolder[0] = EntityTrie.entities.value(entity);
+            return charRefHolder;
         }
     }
 
     Token.Tag createTagPending(boolean start) {
-        tagPending = start ? new Token.StartTag() : new Token.EndTag();
+        tagPending = start ? startPending.reset() : endPending.reset();
         return tagPending;
     }
 
@@ -169,7 +275,7 @@ class Tokeniser {
     }
 
     void createCommentPending() {
-        commentPending = new Token.Comment();
+        commentPending.reset();
     }
 
     void emitCommentPending() {
@@ -177,7 +283,7 @@ class Tokeniser {
     }
 
     void createDoctypePending() {
-        doctypePending = new Token.Doctype();
+        doctypePending.reset();
     }
 
     void emitDoctypePending() {
@@ -185,17 +291,30 @@ class Tokeniser {
     }
 
     void createTempBuffer() {
-        dataBuffer = new StringBuilder();
+        if (dataBuffer == null)
+            dataBuffer = new StringBuilder();
+        else
+            dataBuffer.setLength(0);
     }
 
     boolean isAppropriateEndTagToken() {
         if (lastStartTag == null)
             return false;
-        return tagPending.tagName.equals(lastStartTag.tagName);
+        return tagPending.tagName.equals(lastStartTag);
     }
 
     String appropriateEndTagName() {
-        return lastStartTag.tagName;
+        return lastStartTag;
+    }
+
+    /**
+     * Get the start of the appropriate end tag (e.g. {@code </title}), to look for in raw text. Built once per start
+     * tag, rather than at each {@code <} in the text.
+     */
+    String appropriateEndTagSeq() {
+        if (appropriateEndTagSeq == null)
+            appropriateEndTagSeq = "</" + lastStartTag;
+        return appropriateEndTagSeq;
     }
 
     void error(TokeniserState state) {
@@ -22,8 +22,7 @@ enum TokeniserState {
                     t.emit(new Token.EOF());
                     break;
                 default:
-                    String data = r.consumeToAny('&', '<', nullChar);
-                    t.emit(data);
+                    t.emitToAny(r, dataStops);
                     break;
             }
         }
@@ -58,8 +57,7 @@ enum TokeniserState {
                     t.emit(new Token.EOF());
                     break;
                 default:
-                    String data = r.consumeToAny('&', '<', nullChar);
-                    t.emit(data);
+                    t.emitToAny(r, dataStops);
                     break;
             }
         }
@@ -89,7 +87,7 @@ enum TokeniserState {
                     t.emit(new Token.EOF());
                     break;
                 default:
-                    String data = r.consumeToAny('<', nullChar);
+                    String data = r.consumeToAny(rawDataStops);
                     t.emit(data);
                     break;
             }
@@ -110,7 +108,7 @@ enum TokeniserState {
                     t.emit(new Token.EOF());
                     break;
                 default:
-                    String data = r.consumeToAny('<', nullChar);
+                    String data = r.consumeToAny(rawDataStops);
                     t.emit(data);
                     break;
             }
@@ -182,7 +180,7 @@ enum TokeniserState {
         // from < or </ in data, will have start or end tag pending
         void read(Tokeniser t, CharacterReader r) {
             // previous TagOpen state did NOT consume, will have a letter char in current
-            String tagName = r.consumeToAny('\t', '\n', '\r', '\f', ' ', '/', '>', nullChar).toLowerCase();
+            String tagName = r.consumeName(t.names, tagNameTerminators);
             t.tagPending.appendTagName(tagName);
 
             switch (r.consume()) {
@@ -216,10 +214,10 @@ enum TokeniserState {
             if (r.matches('/')) {
                 t.createTempBuffer();
                 t.advanceTransition(RCDATAEndTagOpen);
-            } else if (r.matchesLetter() && !r.containsIgnoreCase("</" + t.appropriateEndTagName())) {
+            } else if (r.matchesLetter() && !r.containsIgnoreCase(t.appropriateEndTagSeq())) {
                 // diverge from spec: got a start tag, but there's no appropriate end tag (</title>), so rather than
                 // consuming to EOF; break out here
-                t.tagPending = new Token.EndTag(t.appropriateEndTagName());
+                t.createTagPending(false).name(t.appropriateEndTagName());
                 t.emitTagPending();
                 r.unconsume(); // undo "<"
                 t.transition(Data);
@@ -392,7 +390,7 @@ enum TokeniserState {
                     t.emit(replacementChar);
                     break;
                 default:
-                    String data = r.consumeToAny('-', '<', nullChar);
+                    String data = r.consumeToAny(escapedDataStops);
                     t.emit(data);
             }
         }
@@ -517,7 +515,7 @@ enum TokeniserState {
                     t.transition(Data);
                     break;
                 default:
-                    String data = r.consumeToAny('-', '<', nullChar);
+                    String data = r.consumeToAny(escapedDataStops);
                     t.emit(data);
             }
         }
@@ -642,8 +640,8 @@ enum TokeniserState {
     AttributeName {
         // from before attribute name
         void read(Tokeniser t, CharacterReader r) {
-            String name = r.consumeToAny('\t', '\n', '\r', '\f', ' ', '/', '=', '>', nullChar, '"', '\'', '<');
-            t.tagPending.appendAttributeName(name.toLowerCase());
+            String name = r.consumeName(t.names, attributeNameTerminators);
+            t.tagPending.appendAttributeName(name);
 
             char c = r.consume();
             switch (c) {
@@ -776,7 +774,7 @@ enum TokeniserState {
     },
     AttributeValue_doubleQuoted {
         void read(Tokeniser t, CharacterReader r) {
-            String value = r.consumeToAny('"', '&', nullChar);
+            String value = r.consumeToAny(attributeValueDoubleQuotedStops);
             if (value.length() > 0)
                 t.tagPending.appendAttributeValue(value);
 
@@ -786,11 +784,7 @@ enum TokeniserState {
                     t.transition(AfterAttributeValue_quoted);
                     break;
                 case '&':
-                    char[] ref = t.consumeCharacterReference('"', true);
-                    if (ref != null)
-                        t.tagPending.appendAttributeValue(ref);
-                    else
-                        t.tagPending.appendAttributeValue('&');
+                    t.consumeAttributeValueReference('"');
                     break;
                 case nullChar:
                     t.error(this);
@@ -806,7 +800,7 @@ enum TokeniserState {
     },
     AttributeValue_singleQuoted {
         void read(Tokeniser t, CharacterReader r) {
-            String value = r.consumeToAny('\'', '&', nullChar);
+            String value = r.consumeToAny(attributeValueSingleQuotedStops);
             if (value.length() > 0)
                 t.tagPending.appendAttributeValue(value);
 
@@ -816,11 +810,7 @@ enum TokeniserState {
                     t.transition(AfterAttributeValue_quoted);
                     break;
                 case '&':
-                    char[] ref = t.consumeCharacterReference('\'', true);
-                    if (ref != null)
-                        t.tagPending.appendAttributeValue(ref);
-                    else
-                        t.tagPending.appendAttributeValue('&');
+                    t.consumeAttributeValueReference('\'');
                     break;
                 case nullChar:
                     t.error(this);
@@ -836,7 +826,7 @@ enum TokeniserState {
     },
     AttributeValue_unquoted {
         void read(Tokeniser t, CharacterReader r) {
-            String value = r.consumeToAny('\t', '\n', '\r', '\f', ' ', '&', '>', nullChar, '"', '\'', '<', '=', '`');
+            String value = r.consumeToAny(attributeValueUnquotedStops);
             if (value.length() > 0)
                 t.tagPending.appendAttributeValue(value);
 
@@ -850,11 +840,7 @@ enum TokeniserState {
                     t.transition(BeforeAttributeName);
                     break;
                 case '&':
-                    char[] ref = t.consumeCharacterReference('>', true);
-                    if (ref != null)
-                        t.tagPending.appendAttributeValue(ref);
-                    else
-                        t.tagPending.appendAttributeValue('&');
+                    t.consumeAttributeValueReference('>');
                     break;
                 case '>':
                     t.emitTagPending();
@@ -936,11 +922,11 @@ enum TokeniserState {
             // todo: handle bogus comment starting from eof. when does that trigger?
             // rewind to capture character that lead us here
             r.unconsume();
-            Token.Comment comment = new Token.Comment();
-            comment.bogus = true;
-            comment.data.append(r.consumeTo('>'));
+            t.createCommentPending();
+            t.commentPending.bogus = true;
+            t.commentPending.data.append(r.consumeTo('>'));
             // todo: replace nullChar with replaceChar
-            t.emit(comment);
+            t.emitCommentPending();
             t.advanceTransition(Data);
         }
     },
@@ -1036,7 +1022,7 @@ enum TokeniserState {
                     t.transition(Data);
                     break;
                 default:
-                    t.commentPending.data.append(r.consumeToAny('-', nullChar));
+                    t.commentPending.data.append(r.consumeToAny(commentStops));
             }
         }
     },
@@ -1226,7 +1212,7 @@ enum TokeniserState {
                 t.transition(Data);
                 return;
             }
-            if (r.matchesAny('\t', '\n', '\r', '\f', ' '))
+            if (r.matchesAny(whitespace))
                 r.advance(); // ignore whitespace
             else if (r.matches('>')) {
                 t.emitDoctypePending();
@@ -1645,6 +1631,17 @@ enum TokeniserState {
     private static final char replacementChar = Tokeniser.replacementChar;
     private static final String replacementStr = String.valueOf(Tokeniser.replacementChar);
     private static final char eof = CharacterReader.EOF;
+    // the chars that end a run in each state, as lookup tables for the CharacterReader's scans
+    private static final CharClass dataStops = CharClass.anyOf('&', '<', nullChar);
+    private static final CharClass rawDataStops = CharClass.anyOf('<', nullChar);
+    private static final CharClass escapedDataStops = CharClass.anyOf('-', '<', nullChar);
+    private static final CharClass commentStops = CharClass.anyOf('-', nullChar);
+    private static final CharClass tagNameTerminators = CharClass.anyOf('\t', '\n', '\r', '\f', ' ', '/', '>', nullChar);
+    private static final CharClass attributeNameTerminators = CharClass.anyOf('\t', '\n', '\r', '\f', ' ', '/', '=', '>', nullChar, '"', '\'', '<');
+    private static final CharClass attributeValueDoubleQuotedStops = CharClass.anyOf('"', '&', nullChar);
+    private static final CharClass attributeValueSingleQuotedStops = CharClass.anyOf('\'', '&', nullChar);
+    private static final CharClass attributeValueUnquotedStops = CharClass.anyOf('\t', '\n', '\r', '\f', ' ', '&', '>', nullChar, '"', '\'', '<', '=', '`');
+    private static final CharClass whitespace = CharClass.anyOf('\t', '\n', '\r', '\f', ' ');
 
     /**
      * Handles RawtextEndTagName, ScriptDataEndTagName, and ScriptDataEscapedEndTagName. Same body impl, just
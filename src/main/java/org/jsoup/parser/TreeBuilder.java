@@ -1,60 +1,316 @@
 package org.jsoup.parser;
 
-import org.jsoup.helper.DescendableLinkedList;
 import org.jsoup.helper.Validate;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.DocumentType;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
 
+import java.io.Reader;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
 
 /**
  * @author Jonathan Hedley
  */
 abstract class TreeBuilder {
+    static final ParseLimits noLimits = new ParseLimits(); // not changed
     CharacterReader reader;
     Tokeniser tokeniser;
     protected Document doc; // current doc we are building into
-    protected DescendableLinkedList<Element> stack; // the stack of open elements
+    protected ArrayList<Element> stack; // the stack of open elements
     protected String baseUri; // current base uri, for creating new elements
     protected Token currentToken; // currentToken is used only for error tracking.
     protected ParseErrorList errors; // null when not tracking errors
+    ParseFilter filter; // when set, the html tree builder drops the content it filters out
+    StopCondition stopCondition; // when set, checked after each token, to end the parse early
+    boolean sharedSourceText; // when set, text nodes view the input buffer rather than copy from it
+    boolean lean; // when set, comments (and in html, unrendered whitespace) are not added
+    ParseLimits limits = noLimits; // limits on the input, depth, and nodes of the parse
+    private int nodeCount; // nodes added in this parse, for the node limit
+    private ParseEventHandler handler; // when set, nodes are reported to this rather than added to the tree
+    private ArrayList<Element> started; // when reporting events: the doc, then the elements started but not yet ended
+    // when truncating, start tags past the max depth are dropped rather than pushed, so the stack (and the work done
+    // per token) stays within the limit. these are their names, innermost last, with a count of each for their end
+    // tags to find; and the element they were dropped in, at its depth. once that is popped, they closed with it.
+    private final ArrayList<String> dropped = new ArrayList<String>();
+    private final HashMap<String, Integer> droppedCounts = new HashMap<String, Integer>();
+    private Element droppedIn;
+    private int droppedDepth;
 
-    protected void initialiseParse(String input, String baseUri, ParseErrorList errors) {
-        Validate.notNull(input, "String input must not be null");
+    protected void initialiseParse(CharacterReader input, String baseUri, ParseErrorList errors) {
+        Validate.notNull(input, "Input must not be null");
         Validate.notNull(baseUri, "BaseURI must not be null");
 
+        reset();
         doc = new Document(baseUri);
-        reader = new CharacterReader(input);
+        reader = input;
         this.errors = errors;
-        tokeniser = new Tokeniser(reader, errors);
-        stack = new DescendableLinkedList<Element>();
+        if (tokeniser == null)
+            tokeniser = new Tokeniser(reader, errors);
+        else
+            tokeniser.reset(reader, errors);
+        tokeniser.limits(limits);
+        if (sharedSourceText)
+            tokeniser.shareSource();
         this.baseUri = baseUri;
     }
 
+    /**
+     * Clear the state of the last parse, so this tree builder can be reused. The stack, tokeniser and input reader are
+     * kept, with the buffers they have grown; references to the last document are dropped. Subclasses that hold
+     * parse state must clear it here.
+     */
+    void reset() {
+        doc = null;
+        if (stack == null)
+            stack = new ArrayList<Element>(32);
+        else
+            stack.clear();
+        currentToken = null;
+        errors = null;
+        baseUri = null;
+        nodeCount = 0;
+        clearDropped();
+    }
+
+    /**
+     * Check if a parse is in progress (the document being built has not been returned yet).
+     */
+    boolean isParsing() {
+        return doc != null;
+    }
+
+    // the input reader, reset to read the input, reusing its buffer from the last parse
+    private CharacterReader readerFor(String input) {
+        Validate.notNull(input, "String input must not be null");
+        input = limits.limit(input);
+        if (reader == null)
+            return new CharacterReader(input);
+        reader.reset(input);
+        return reader;
+    }
+
+    private CharacterReader readerFor(Reader input) {
+        Validate.notNull(input, "Reader input must not be null");
+        input = limits.limit(input);
+        if (reader == null)
+            return new CharacterReader(input);
+        reader.reset(input);
+        return reader;
+    }
+
     Document parse(String input, String baseUri) {
         return parse(input, baseUri, ParseErrorList.noTracking());
     }
 
     Document parse(String input, String baseUri, ParseErrorList errors) {
+        return parse(readerFor(input), baseUri, errors);
+    }
+
+    Document parse(Reader input, String baseUri, ParseErrorList errors) {
+        return parse(readerFor(input), baseUri, errors);
+    }
+
+    Document parse(CharacterReader input, String baseUri, ParseErrorList errors) {
         initialiseParse(input, baseUri, errors);
-        runParser();
-        return doc;
+        try {
+            runParser();
+            return doc;
+        } finally {
+            reset();
+        }
+    }
+
+    void parse(String input, String baseUri, ParseErrorList errors, ParseEventHandler handler) {
+        parse(readerFor(input), baseUri, errors, handler);
+    }
+
+    void parse(Reader input, String baseUri, ParseErrorList errors, ParseEventHandler handler) {
+        parse(readerFor(input), baseUri, errors, handler);
+    }
+
+    void parse(CharacterReader input, String baseUri, ParseErrorList errors, ParseEventHandler handler) {
+        Validate.notNull(handler, "Handler must not be null");
+        initialiseParse(input, baseUri, errors);
+        this.handler = handler;
+        started = new ArrayList<Element>(32);
+        started.add(doc);
+        try {
+            runParser();
+            endEvents(0);
+        } finally {
+            this.handler = null;
+            started = null;
+            reset();
+        }
     }
 
     protected void runParser() {
         while (true) {
             Token token = tokeniser.read();
-            process(token);
+            if (!dropOverDepth(token))
+                process(token);
 
             if (token.type == Token.TokenType.EOF)
                 break;
+            if (nodeCount > limits.maxNodes()) {
+                limits.exceeded("max nodes of " + limits.maxNodes());
+                process(new Token.EOF());
+                break;
+            }
+            if (stopCondition != null && stopCondition.stop(doc, stack.isEmpty() ? null : currentElement())) {
+                process(new Token.EOF()); // finish as if the input ended here, closing open elements
+                break;
+            }
         }
     }
 
     protected abstract boolean process(Token token);
 
+    /**
+     * Count a node added to the document (or reported), against the node limit.
+     */
+    void countNode() {
+        nodeCount++;
+    }
+
+    /**
+     * Check if an element pushed on the stack now would be deeper than the max depth. When truncating, the element is
+     * kept out of the tree, and its content goes into the deepest element within the limit.
+     */
+    boolean overDepth() {
+        if (stack.size() < limits.maxDepth())
+            return false;
+        limits.exceeded("max depth of " + limits.maxDepth());
+        return true;
+    }
+
+    /**
+     * Check if a start tag could open an element deeper than the current one. When truncating at the max depth, those
+     * that could are dropped before processing.
+     */
+    boolean deepens(Token.StartTag startTag) {
+        return !startTag.isSelfClosing();
+    }
+
+    /**
+     * Called when a start tag past the max depth has been dropped, for the tokeniser to read its content as it would
+     * have if the element were opened.
+     */
+    void dropped(Token.StartTag startTag) {}
+
+    // when truncating, drops a start tag that would go past the max depth, and the end tag that closes it
+    private boolean dropOverDepth(Token token) {
+        if (limits.policy() != ParseLimits.Policy.truncate)
+            return false;
+        if (token.type == Token.TokenType.StartTag) {
+            Token.StartTag startTag = token.asStartTag();
+            if (stack.size() < limits.maxDepth() || !deepens(startTag))
+                return false;
+            Element current = currentElement();
+            if (droppedIn != current)
+                clearDropped();
+            droppedIn = current;
+            droppedDepth = stack.size();
+            String name = startTag.name();
+            Integer count = droppedCounts.get(name);
+            droppedCounts.put(name, count == null ? 1 : count + 1);
+            dropped.add(name);
+            dropped(startTag);
+            return true;
+        } else if (token.type == Token.TokenType.EndTag && !dropped.isEmpty()) {
+            if (stack.size() < droppedDepth || stack.get(droppedDepth - 1) != droppedIn) {
+                clearDropped();
+                return false;
+            }
+            String name = token.asEndTag().name();
+            if (droppedIn != currentElement() || !droppedCounts.containsKey(name))
+                return false; // for an element opened since (e.g. a self closing one), or not dropped
+            while (true) { // closes the last dropped with this name, and any dropped within it
+                String open = dropped.remove(dropped.size() - 1);
+                int count = droppedCounts.get(open);
+                if (count == 1)
+                    droppedCounts.remove(open);
+                else
+                    droppedCounts.put(open, count - 1);
+                if (open.equals(name))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void clearDropped() {
+        dropped.clear();
+        droppedCounts.clear();
+        droppedIn = null;
+    }
+
     protected Element currentElement() {
-        return stack.getLast();
+        return stack.get(stack.size()-1);
+    }
+
+    /**
+     * Check if the parse is reporting events to a handler, rather than building a tree.
+     */
+    boolean isReportingEvents() {
+        return handler != null;
+    }
+
+    /**
+     * Add a node to its parent; or when reporting events, report it.
+     * @param parent node to add to
+     * @param node new node
+     */
+    void appendNode(Element parent, Node node) {
+        if (handler == null) {
+            parent.appendChild(node);
+            return;
+        }
+
+        startEventsIn(parent);
+        if (node instanceof Element) {
+            Element el = (Element) node;
+            handler.startElement(el.nodeName(), el.attributes());
+            started.add(el);
+        } else if (node instanceof TextNode) {
+            handler.text(((TextNode) node).getWholeText());
+        } else if (node instanceof DataNode) {
+            handler.text(((DataNode) node).getWholeData());
+        } else if (node instanceof Comment) {
+            handler.comment(((Comment) node).getData());
+        } else if (node instanceof DocumentType) {
+            handler.doctype(node.attr("name"), node.attr("publicId"), node.attr("systemId"));
+        }
+    }
+
+    /**
+     * Report text, without creating a node for it.
+     * @param parent element the text is in
+     * @param text text
+     */
+    void reportText(Element parent, String text) {
+        startEventsIn(parent);
+        handler.text(text);
+    }
+
+    // ends the started elements that are within the parent, so the next event is reported as its child. if the parent
+    // has already been ended (its content was moved by the tree builder), the event goes in the latest started element.
+    private void startEventsIn(Element parent) {
+        for (int pos = started.size() - 1; pos >= 0; pos--) {
+            if (started.get(pos) == parent) {
+                endEvents(pos + 1);
+                return;
+            }
+        }
+    }
+
+    private void endEvents(int depth) {
+        for (int pos = started.size() - 1; pos >= depth && pos > 0; pos--) // the doc at 0 is never ended
+            handler.endElement(started.remove(pos).nodeName());
     }
 }
@@ -3,7 +3,6 @@ package org.jsoup.parser;
 import org.jsoup.helper.Validate;
 import org.jsoup.nodes.*;
 
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -15,7 +14,7 @@ import java.util.List;
  */
 public class XmlTreeBuilder extends TreeBuilder {
     @Override
-    protected void initialiseParse(String input, String baseUri, ParseErrorList errors) {
+    protected void initialiseParse(CharacterReader input, String baseUri, ParseErrorList errors) {
         super.initialiseParse(input, baseUri, errors);
         stack.add(doc); // place the document onto the stack. differs from HtmlTreeBuilder (not on stack)
         doc.outputSettings().syntax(Document.OutputSettings.Syntax.xml);
@@ -49,13 +48,16 @@ public class XmlTreeBuilder extends TreeBuilder {
     }
 
     private void insertNode(Node node) {
-        currentElement().appendChild(node);
+        countNode();
+        appendNode(currentElement(), node);
     }
 
     Element insert(Token.StartTag startTag) {
         Tag tag = Tag.valueOf(startTag.name());
         // todo: wonder if for xml parsing, should treat all tags as unknown? because it's not html.
-        Element el = new Element(tag, baseUri, startTag.attributes);
+        Element el = new Element(tag, baseUri, startTag.getAttributes());
+        if (!startTag.isSelfClosing())
+            overDepth(); // fails the parse if too deep; when truncating, too deep start tags were dropped before here
         insertNode(el);
         if (startTag.isSelfClosing()) {
             tokeniser.acknowledgeSelfClosingFlag();
@@ -70,18 +72,20 @@ public class XmlTreeBuilder extends TreeBuilder {
     void insert(Token.Comment commentToken) {
         Comment comment = new Comment(commentToken.getData(), baseUri);
         Node insert = comment;
-        if (commentToken.bogus) { // xml declarations are emitted as bogus comments (which is right for html, but not xml)
+        if (commentToken.bogus && !isReportingEvents()) { // xml declarations are emitted as bogus comments (which is right for html, but not xml)
             String data = comment.getData();
             if (data.length() > 1 && (data.startsWith("!") || data.startsWith("?"))) {
                 String declaration = data.substring(1);
                 insert = new XmlDeclaration(declaration, comment.baseUri(), data.startsWith("!"));
             }
         }
+        if (lean && insert == comment) // declarations are kept
+            return;
         insertNode(insert);
     }
 
     void insert(Token.Character characterToken) {
-        Node node = new TextNode(characterToken.getData(), baseUri);
+        Node node = new TextNode(characterToken.getChars(), baseUri);
         insertNode(node);
     }
 
@@ -100,9 +104,8 @@ public class XmlTreeBuilder extends TreeBuilder {
         String elName = endTag.name();
         Element firstFound = null;
 
-        Iterator<Element> it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.get(pos);
             if (next.nodeName().equals(elName)) {
                 firstFound = next;
                 break;
@@ -111,20 +114,16 @@ public class XmlTreeBuilder extends TreeBuilder {
         if (firstFound == null)
             return; // not found, skip
 
-        it = stack.descendingIterator();
-        while (it.hasNext()) {
-            Element next = it.next();
-            if (next == firstFound) {
-                it.remove();
+        for (int pos = stack.size() - 1; pos >= 0; pos--) {
+            Element next = stack.get(pos);
+            stack.remove(pos);
+            if (next == firstFound)
                 break;
-            } else {
-                it.remove();
-            }
         }
     }
 
     List<Node> parseFragment(String inputFragment, String baseUri, ParseErrorList errors) {
-        initialiseParse(inputFragment, baseUri, errors);
+        initialiseParse(new CharacterReader(inputFragment), baseUri, errors);
         runParser();
         return doc.childNodes();
     }
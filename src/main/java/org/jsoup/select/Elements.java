@@ -399,9 +399,20 @@ public class Elements implements List<Element>, Cloneable {
      * @see #empty()
      */
     public Elements remove() {
+        // grouped by parent, so each parent's children are compacted once, rather than once per removed element
+        Map<Node, List<Element>> byParent = new IdentityHashMap<Node, List<Element>>();
         for (Element element : contents) {
-            element.remove();
+            Node parent = element.parentNode();
+            Validate.notNull(parent);
+            List<Element> children = byParent.get(parent);
+            if (children == null) {
+                children = new ArrayList<Element>();
+                byParent.put(parent, children);
+            }
+            children.add(element);
         }
+        for (Map.Entry<Node, List<Element>> entry : byParent.entrySet())
+            entry.getKey().removeChildren(entry.getValue());
         return this;
     }
     
@@ -53,7 +53,7 @@ public abstract class Evaluator {
      * Evaluator for element id
      */
     public static final class Id extends Evaluator {
-        private String id;
+        final String id; // read by Selector, to find the element in a document's id index
 
         public Id(String id) {
             this.id = id;
@@ -308,7 +308,7 @@ public abstract class Evaluator {
 
         @Override
         public boolean matches(Element root, Element element) {
-            return element.elementSiblingIndex() < index;
+            return element.elementIndex() < index;
         }
 
         @Override
@@ -328,7 +328,7 @@ public abstract class Evaluator {
 
         @Override
         public boolean matches(Element root, Element element) {
-            return element.elementSiblingIndex() > index;
+            return element.elementIndex() > index;
         }
 
         @Override
@@ -348,7 +348,7 @@ public abstract class Evaluator {
 
         @Override
         public boolean matches(Element root, Element element) {
-            return element.elementSiblingIndex() == index;
+            return element.elementIndex() == index;
         }
 
         @Override
@@ -365,7 +365,7 @@ public abstract class Evaluator {
 		@Override
 		public boolean matches(Element root, Element element) {
 			final Element p = element.parent();
-			return p != null && !(p instanceof Document) && element.elementSiblingIndex() == p.children().size()-1;
+			return p != null && !(p instanceof Document) && element.elementIndex() == p.childrenSize()-1;
 		}
     	
 		@Override
@@ -443,7 +443,7 @@ public abstract class Evaluator {
 		}
 
 		protected int calculatePosition(Element root, Element element) {
-			return element.elementSiblingIndex()+1;
+			return element.elementIndex()+1;
 		}
 
 		
@@ -464,7 +464,7 @@ public abstract class Evaluator {
 
         @Override
         protected int calculatePosition(Element root, Element element) {
-        	return element.parent().children().size() - element.elementSiblingIndex();
+        	return element.parent().childrenSize() - element.elementIndex();
         }
         
 		@Override
@@ -483,13 +483,7 @@ public abstract class Evaluator {
     	}
 
 		protected int calculatePosition(Element root, Element element) {
-			int pos = 0;
-        	Elements family = element.parent().children();
-        	for (int i = 0; i < family.size(); i++) {
-        		if (family.get(i).tag() == element.tag()) pos++;
-        		if (family.get(i) == element) break;
-        	}
-			return pos;
+			return element.elementTypeIndex()+1;
 		}
 
 		@Override
@@ -506,12 +500,7 @@ public abstract class Evaluator {
 		
 		@Override
 		protected int calculatePosition(Element root, Element element) {
-			int pos = 0;
-        	Elements family = element.parent().children();
-        	for (int i = element.elementSiblingIndex(); i < family.size(); i++) {
-        		if (family.get(i).tag() == element.tag()) pos++;
-        	}
-			return pos;
+			return element.elementTypeCount() - element.elementTypeIndex();
 		}
 
 		@Override
@@ -527,7 +516,7 @@ public abstract class Evaluator {
     	@Override
     	public boolean matches(Element root, Element element) {
     		final Element p = element.parent();
-    		return p != null && !(p instanceof Document) && element.elementSiblingIndex() == 0;
+    		return p != null && !(p instanceof Document) && element.elementIndex() == 0;
     	}
     	
     	@Override
@@ -557,7 +546,7 @@ public abstract class Evaluator {
 		@Override
 		public boolean matches(Element root, Element element) {
 			final Element p = element.parent();
-			return p!=null && !(p instanceof Document) && element.siblingElements().size() == 0;
+			return p!=null && !(p instanceof Document) && p.childrenSize() == 1;
 		}
     	@Override
     	public String toString() {
@@ -569,14 +558,7 @@ public abstract class Evaluator {
 		@Override
 		public boolean matches(Element root, Element element) {
 			final Element p = element.parent();
-			if (p==null || p instanceof Document) return false;
-			
-			int pos = 0;
-        	Elements family = p.children();
-        	for (int i = 0; i < family.size(); i++) {
-        		if (family.get(i).tag().equals(element.tag())) pos++;
-        	}
-        	return pos == 1;
+			return p!=null && !(p instanceof Document) && element.elementTypeCount() == 1;
 		}
     	@Override
     	public String toString() {
@@ -1,6 +1,7 @@
 package org.jsoup.select;
 
 import org.jsoup.helper.Validate;
+import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
 import java.util.Collection;
@@ -112,6 +113,8 @@ public class Selector {
     }
 
     private Elements select() {
+        if (evaluator instanceof Evaluator.Id && root instanceof Document)
+            return ((Document) root).getElementsById(((Evaluator.Id) evaluator).id);
         return Collector.collect(evaluator, root);
     }
 
@@ -0,0 +1,206 @@
+package org.jsoup.helper;
+
+import org.jsoup.Jsoup;
+import org.jsoup.UncheckedIOException;
+import org.jsoup.integration.ParseTest;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchParserTest {
+    private static final Executor direct = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test public void parsesInOrder() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Iterator<BatchParser.Result> results = new BatchParser(pool, 1024).parseInOrder(inputs(50));
+            for (int i = 0; i < 50; i++) {
+                BatchParser.Result result = results.next();
+                assertEquals(i, result.index());
+                assertEquals("Doc " + i, result.document().text());
+            }
+            assertFalse(results.hasNext());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test public void parsesAsCompleted() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Iterator<BatchParser.Result> results = new BatchParser(pool, 1024).parseAsCompleted(inputs(50));
+            boolean[] seen = new boolean[50];
+            while (results.hasNext()) {
+                BatchParser.Result result = results.next();
+                assertFalse(seen[result.index()]);
+                seen[result.index()] = true;
+                assertEquals("Doc " + result.index(), result.document().text());
+            }
+            for (boolean s : seen)
+                assertTrue(s);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test public void parsesAllInOrder() {
+        Iterator<BatchParser.Result> results = Jsoup.parseAll(inputs(3), direct);
+        for (int i = 0; i < 3; i++)
+            assertEquals("Doc " + i, results.next().document().text());
+        assertFalse(results.hasNext());
+    }
+
+    @Test public void reusesParsersAcrossThreads() {
+        Executor threadPerTask = new Executor() {
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command);
+                thread.start();
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        final List<Parser> used = new ArrayList<Parser>();
+        List<BatchParser.Input> inputs = new ArrayList<BatchParser.Input>();
+        for (int i = 0; i < 5; i++) {
+            inputs.add(new BatchParser.Input() {
+                public long size() {
+                    return 10;
+                }
+
+                public Document parse(Parser parser) {
+                    assertFalse(parser.isTrackErrors()); // reset after the last parse
+                    used.add(parser);
+                    parser.setTrackErrors(10);
+                    return parser.parseInput("<p>One", "");
+                }
+            });
+        }
+
+        Iterator<BatchParser.Result> results = new BatchParser(threadPerTask, 10).parseInOrder(inputs);
+        while (results.hasNext())
+            assertEquals("One", results.next().document().text());
+        assertEquals(5, used.size());
+        for (Parser parser : used)
+            assertSame(used.get(0), parser); // one parser, reused by each new thread
+    }
+
+    @Test public void returnsRejectedParsesAsErrors() {
+        for (boolean inOrder : new boolean[] {true, false}) {
+            Executor rejectsThird = new Executor() {
+                int count = 0;
+
+                public void execute(Runnable command) {
+                    if (++count == 3)
+                        throw new RejectedExecutionException("Full");
+                    command.run();
+                }
+            };
+            BatchParser batch = new BatchParser(rejectsThird, 1024);
+            Iterator<BatchParser.Result> results = inOrder ? batch.parseInOrder(inputs(4)) : batch.parseAsCompleted(inputs(4));
+            int errors = 0;
+            int count = 0;
+            while (results.hasNext()) {
+                BatchParser.Result result = results.next();
+                count++;
+                if (result.index() == 2) {
+                    assertTrue(result.error() instanceof RejectedExecutionException);
+                    errors++;
+                } else {
+                    assertEquals("Doc " + result.index(), result.document().text());
+                }
+            }
+            assertEquals(4, count);
+            assertEquals(1, errors);
+        }
+    }
+
+    @Test public void limitsSizeInFlight() {
+        final int[] parsed = new int[1];
+        List<BatchParser.Input> inputs = new ArrayList<BatchParser.Input>();
+        for (int i = 0; i < 10; i++) {
+            inputs.add(new BatchParser.Input() {
+                public long size() {
+                    return 40;
+                }
+
+                public Document parse(Parser parser) {
+                    parsed[0]++;
+                    return parser.parseInput("<p>One", "");
+                }
+            });
+        }
+
+        Iterator<BatchParser.Result> results = new BatchParser(direct, 100).parseInOrder(inputs);
+        assertEquals(0, parsed[0]); // nothing started until results are taken
+        results.next();
+        assertEquals(3, parsed[0]); // the first two were in flight; once the first was returned, the third fit
+        results.next();
+        assertEquals(4, parsed[0]);
+
+        // an input larger than the limit is parsed alone
+        results = new BatchParser(direct, 10).parseInOrder(inputs);
+        parsed[0] = 0;
+        results.next();
+        assertEquals(2, parsed[0]);
+    }
+
+    @Test public void parsesFilesAndBytes() throws IOException {
+        File file = new ParseTest().getFile("/htmltests/smh-biz-article-1.html");
+        ByteBuffer bytes = Charset.forName("UTF-8").encode("<title>Bytes</title>");
+        List<BatchParser.Input> inputs = new ArrayList<BatchParser.Input>();
+        inputs.add(BatchParser.Input.of(file, null, "http://www.smh.com.au/"));
+        inputs.add(BatchParser.Input.of(bytes, "UTF-8", ""));
+        inputs.add(BatchParser.Input.of(new File(file.getParentFile(), "not-found.html"), null, ""));
+
+        Iterator<BatchParser.Result> results = new BatchParser(direct, 1024).parseInOrder(inputs);
+        BatchParser.Result result = results.next();
+        assertEquals(DataUtil.load(file, null, "http://www.smh.com.au/").html(), result.document().html());
+        assertNull(result.error());
+
+        assertEquals("Bytes", results.next().document().title());
+        assertEquals(0, bytes.position());
+
+        result = results.next();
+        assertTrue(result.error() instanceof FileNotFoundException);
+        try {
+            result.document();
+            fail();
+        } catch (UncheckedIOException e) {
+            assertTrue(e.ioException() instanceof FileNotFoundException);
+        }
+    }
+
+    private static List<BatchParser.Input> inputs(int count) {
+        List<BatchParser.Input> inputs = new ArrayList<BatchParser.Input>();
+        for (int i = 0; i < count; i++)
+            inputs.add(BatchParser.Input.of("<div><p>Doc " + i + "</div>", ""));
+        return inputs;
+    }
+}
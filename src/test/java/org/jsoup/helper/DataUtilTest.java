@@ -4,10 +4,17 @@ import org.jsoup.nodes.Document;
 import org.jsoup.parser.Parser;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class DataUtilTest {
     @Test
@@ -64,4 +71,66 @@ public class DataUtilTest {
         assertEquals(null, DataUtil.getCharsetFromContentType("text/html; charset=$HJKDF§$/("));
     }
 
+    @Test public void prescansMetaCharset() {
+        assertEquals("gb2312", prescan("<html><head><meta charset=gb2312></head>"));
+        assertEquals("ISO-8859-1", prescan("<meta http-equiv='Content-Type' content='text/html; charset=ISO-8859-1'>"));
+        assertEquals("windows-1251", prescan("<META CONTENT=\"text/html; charset=windows-1251\" HTTP-EQUIV=content-type>"));
+        assertEquals("UTF-8", prescan("<meta charset=\"UTF-8\"\">"));
+        assertEquals("UTF-8", prescan("\uFEFF<meta charset=gb2312>"));
+        assertEquals("UTF-8", prescan("<meta charset=utf-16le>"));
+    }
+
+    @Test public void prescanSkipsNonDeclarations() {
+        assertNull(prescan("<html><head><title>One</title></head><body>Two</body></html>"));
+        assertNull(prescan("<!-- <meta charset=gb2312> --><p>One"));
+        assertNull(prescan("<meta content='text/html; charset=ISO-8859-1'>")); // no http-equiv
+        assertNull(prescan("<meta charset=unknown-charset>"));
+        assertEquals("ISO-8859-1", prescan("<p title='<meta charset=gb2312>'><meta charset=ISO-8859-1>"));
+        assertEquals("ISO-8859-1", prescan("<!--><meta charset=ISO-8859-1>"));
+    }
+
+    @Test public void prescanDecodesOnceInDeclaredCharset() throws UnsupportedEncodingException {
+        String html = "<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=Shift_JIS\"><title>日本語</title></head><body>テスト</body></html>";
+        ByteBuffer buffer = ByteBuffer.wrap(html.getBytes("Shift_JIS"));
+        Document doc = DataUtil.parseByteData(buffer, null, "http://foo.com/", Parser.htmlParser());
+        assertEquals("日本語", doc.title());
+        assertEquals("テスト", doc.body().text());
+        assertEquals("Shift_JIS", doc.outputSettings().charset().name());
+    }
+
+    @Test public void findsMetaCharsetPastPrescanWindow() throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder("<html><head><script>");
+        for (int i = 0; i < CharsetPrescanner.prescanLength; i++)
+            sb.append(' ');
+        sb.append("</script><meta charset=gb2312></head><body>新</body></html>");
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes("GB2312"));
+        Document doc = DataUtil.parseByteData(buffer, null, "http://foo.com/", Parser.htmlParser());
+        assertEquals("新", doc.body().text());
+        assertEquals("GB2312", doc.outputSettings().charset().displayName());
+    }
+
+    @Test public void mapsLargeFiles() throws IOException {
+        String html = "<html><head><meta charset=ISO-8859-1><title>Ünï</title></head><body>Two</body></html>";
+        File file = File.createTempFile("jsoup", ".html");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(html.getBytes("ISO-8859-1"));
+            out.close();
+
+            ByteBuffer read = DataUtil.readFileToByteBuffer(file);
+            assertFalse(read.isDirect()); // small file, read onto the heap
+            ByteBuffer mapped = DataUtil.readFileToByteBuffer(file, 0);
+            assertTrue(mapped.isDirect());
+            assertEquals(read, mapped);
+
+            Document doc = DataUtil.parseByteData(mapped, null, "http://foo.com/", Parser.htmlParser());
+            assertEquals("Ünï", doc.title());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String prescan(String html) {
+        return CharsetPrescanner.detect(Charset.forName("UTF-8").encode(html));
+    }
 }
@@ -1,13 +1,22 @@
 package org.jsoup.integration;
 
 import org.jsoup.Jsoup;
+import org.jsoup.helper.BatchParser;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 import org.jsoup.select.Elements;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -168,6 +177,125 @@ public class ParseTest {
         assertEquals("In July, GM said its electric Chevrolet Volt will be sold in the United States at $41,000 -- $8,000 more than its nearest competitor, the Nissan Leaf.", p.text());
     }
 
+    @Test
+    public void testReaderInputMatchesStringInput() throws IOException {
+        File in = getFile("/htmltests/news-com-au-home.html");
+        Document fromString = Jsoup.parse(in, "UTF-8", "http://www.news.com.au/");
+
+        Reader reader = new InputStreamReader(new FileInputStream(in), "UTF-8");
+        Document fromReader;
+        try {
+            fromReader = Parser.htmlParser().parseInput(reader, "http://www.news.com.au/");
+        } finally {
+            reader.close();
+        }
+        assertEquals(fromString.outerHtml(), fromReader.outerHtml());
+    }
+
+    // Ignored as it takes a while. Compares detecting a meta charset by parsing twice (once as UTF-8 to find the meta,
+    // then again in the found charset), against the byte prescan, which decodes and parses once.
+    @Ignore
+    @Test
+    public void benchmarkCharsetDetection() throws IOException {
+        final String[] resources = {"/htmltests/baidu-cn-home.html", "/htmltests/baidu-variant.html"}; // gb2312
+        final byte[][] data = new byte[resources.length][];
+        for (int i = 0; i < resources.length; i++) {
+            File file = getFile(resources[i]);
+            data[i] = new byte[(int) file.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            in.readFully(data[i]);
+            in.close();
+        }
+
+        Benchmark.run(new Runnable() {
+            public void run() {
+                try {
+                    for (byte[] bytes : data) {
+                        Jsoup.parse(new ByteArrayInputStream(bytes), "UTF-8", "http://example.com/");
+                        Jsoup.parse(new ByteArrayInputStream(bytes), "GB2312", "http://example.com/");
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, new Runnable() {
+            public void run() {
+                try {
+                    for (byte[] bytes : data) {
+                        Document doc = Jsoup.parse(new ByteArrayInputStream(bytes), null, "http://example.com/");
+                        assertEquals("GB2312", doc.outputSettings().charset().displayName());
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1000);
+    }
+
+    // Ignored as it takes a while. Tokenises 5MB of inline script and of textarea content, both full of < comparisons.
+    // Each < in a textarea checks for the closing tag ahead; that check should not rescan the rest of the input, so the
+    // textarea should take about as long as the script, rather than growing quadratically with the size of the text.
+    @Ignore
+    @Test
+    public void benchmarkLargeRawText() {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 5 * 1024 * 1024)
+            sb.append("if (a<b && c<d) { for (i=0; i<n; i++) x<y; }\n");
+        final String text = sb.toString();
+
+        Benchmark.run(new Runnable() {
+            public void run() {
+                Document doc = Jsoup.parse("<script>" + text + "</script>");
+                assertEquals(text, doc.select("script").first().data());
+            }
+        }, new Runnable() {
+            public void run() {
+                Document doc = Jsoup.parse("<textarea>" + text + "</textarea>");
+                assertEquals(text.trim(), doc.select("textarea").first().val());
+            }
+        }, 5);
+    }
+
+    // Ignored as it takes a while. Parses the test documents many times as a batch, on pools of 1 to N threads (N being
+    // the available cores), and prints the throughput for each, to check that batch parsing scales with cores.
+    @Ignore
+    @Test
+    public void benchmarkBatchScaling() throws IOException, InterruptedException {
+        String[] resources = {"/htmltests/news-com-au-home.html", "/htmltests/nyt-article-1.html",
+                "/htmltests/yahoo-jp.html", "/htmltests/smh-biz-article-1.html"};
+        List<BatchParser.Input> inputs = new ArrayList<BatchParser.Input>();
+        long bytes = 0;
+        for (int i = 0; i < 100; i++) {
+            for (String resource : resources) {
+                File file = getFile(resource);
+                inputs.add(BatchParser.Input.of(file, null, "http://example.com/"));
+                bytes += file.length();
+            }
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads++) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            BatchParser batch = new BatchParser(pool, 32 * 1024 * 1024);
+            for (int run = 0; run < 3; run++) { // the first runs warm up
+                long start = System.nanoTime();
+                Iterator<BatchParser.Result> results = batch.parseAsCompleted(inputs);
+                int count = 0;
+                while (results.hasNext()) {
+                    assertNotNull(results.next().document());
+                    count++;
+                }
+                assertEquals(inputs.size(), count);
+                double secs = (System.nanoTime() - start) / 1e9;
+                if (run == 2)
+                    System.out.println(String.format("%d threads: %.0f docs/s, %.1f MB/s", threads, count / secs,
+                            bytes / secs / (1024 * 1024)));
+            }
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
     public File getFile(String resourceName) {
         try {
             File file = new File(ParseTest.class.getResource(resourceName).toURI());
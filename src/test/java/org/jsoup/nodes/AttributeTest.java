@@ -17,4 +17,17 @@ public class AttributeTest {
         assertEquals(s + "=\"A" + s + "B\"", attr.html());
         assertEquals(attr.html(), attr.toString());
     }
+
+    @Test public void decodesEncodedValueWhenRead() {
+        Attribute attr = Attribute.createFromEncoded("href", "?a=1&amp;b=&lt;2&gt&notit");
+        assertEquals("href=\"?a=1&amp;b=<2>&amp;notit\"", attr.html());
+        assertEquals("?a=1&b=<2>&notit", attr.getValue());
+        assertEquals(new Attribute("href", "?a=1&b=<2>&notit"), attr);
+        assertEquals(new Attribute("href", "?a=1&b=<2>&notit").hashCode(), attr.hashCode());
+
+        Attribute set = Attribute.createFromEncoded("title", "&amp;");
+        assertEquals("&", set.setValue("&amp;"));
+        assertEquals("&amp;", set.getValue());
+        assertEquals("&amp;", set.clone().getValue());
+    }
 }
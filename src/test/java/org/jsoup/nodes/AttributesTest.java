@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * Tests for Attributes.
  *
@@ -28,4 +31,83 @@ public class AttributesTest {
         assertEquals(a.html(), a.toString());
     }
 
+    @Test public void keepsOrderAcrossReplaceAndRemove() {
+        Attributes a = new Attributes();
+        for (int i = 0; i < 10; i++) // past the initial capacity
+            a.put("k" + i, String.valueOf(i));
+        a.put("K3", "three");
+        a.remove("k0");
+        a.remove("K9");
+        a.remove("none");
+
+        assertEquals(8, a.size());
+        assertEquals("three", a.get("k3"));
+        assertEquals("", a.get("k0"));
+        assertFalse(a.hasKey("k9"));
+        assertEquals(" k1=\"1\" k2=\"2\" k3=\"three\" k4=\"4\" k5=\"5\" k6=\"6\" k7=\"7\" k8=\"8\"", a.html());
+    }
+
+    @Test public void attributesAreViews() {
+        Attributes a = new Attributes();
+        a.put("one", "1");
+        a.put("two", "2");
+        for (Attribute attribute : a)
+            attribute.setValue(attribute.getValue() + "!");
+        assertEquals(" one=\"1!\" two=\"2!\"", a.html());
+
+        Attribute three = new Attribute("three", "3");
+        a.put(three);
+        three.setValue("3!");
+        assertEquals("3!", a.get("three"));
+
+        Attribute copy = a.asList().get(0).clone();
+        copy.setValue("x");
+        assertEquals("1!", a.get("one"));
+    }
+
+    @Test public void equalsIgnoresOrder() {
+        Attributes a = new Attributes();
+        a.put("one", "1");
+        a.put("two", "2");
+        Attributes b = new Attributes();
+        b.put("Two", "2");
+        b.put("one", "1");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+
+        b.put("one", "2");
+        assertFalse(a.equals(b));
+        assertEquals(new Attributes(), new Attributes());
+    }
+
+    @Test public void cloneAndAddAllCopyEncodedValues() {
+        Attributes a = new Attributes();
+        Attribute encoded = Attribute.createFromEncoded("title", "One &amp; Two");
+        a.put(encoded);
+        Attributes clone = a.clone();
+        Attributes added = new Attributes();
+        added.addAll(a);
+
+        encoded.setValue("Three");
+        assertEquals("Three", a.get("title"));
+        assertEquals("One & Two", clone.get("title"));
+        assertEquals("One & Two", added.get("title"));
+    }
+
+    @Test public void datasetIteratorRemoves() {
+        Attributes a = new Attributes();
+        a.put("data-one", "1");
+        a.put("id", "x");
+        a.put("data-two", "2");
+        Map<String, String> dataset = a.dataset();
+        assertEquals(2, dataset.size());
+
+        Iterator<Map.Entry<String, String>> it = dataset.entrySet().iterator();
+        assertEquals("one", it.next().getKey());
+        it.remove();
+        assertTrue(it.hasNext());
+        assertEquals("2", it.next().getValue());
+        assertFalse(it.hasNext());
+        assertEquals(" id=\"x\" data-two=\"2\"", a.html());
+    }
 }
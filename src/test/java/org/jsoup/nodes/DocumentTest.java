@@ -6,6 +6,7 @@ import java.io.IOException;
 import org.jsoup.Jsoup;
 import org.jsoup.TextUtil;
 import org.jsoup.integration.ParseTest;
+import org.jsoup.parser.Tag;
 import org.junit.Test;
 import org.junit.Ignore;
 
@@ -17,6 +18,110 @@ import static org.junit.Assert.*;
 
  @author Jonathan Hedley, jonathan@hedley.net */
 public class DocumentTest {
+    @Test public void indexesIds() {
+        Document doc = Jsoup.parse("<div id=a><p id=b>One</p><p id=c>Two</p></div><span id=c>Three</span>").indexIds(true);
+        Element a = doc.getElementById("a");
+        Element b = doc.getElementById("b");
+        assertEquals("div", a.tagName());
+        assertEquals("Two", doc.getElementById("c").text()); // first in document order
+        assertEquals(2, doc.select("#c").size());
+        assertNull(doc.getElementById("d"));
+
+        doc.getElementById("c").remove();
+        assertEquals("Three", doc.getElementById("c").text());
+        assertEquals(1, doc.select("#c").size());
+
+        b.attr("id", "d");
+        assertNull(doc.getElementById("b"));
+        assertSame(b, doc.getElementById("d"));
+        b.removeAttr("id");
+        assertNull(doc.getElementById("d"));
+
+        doc.body().append("<i id=e><b id=f></b></i>");
+        assertEquals("b", doc.getElementById("f").tagName());
+        assertEquals("b", doc.select("#f").first().tagName());
+        doc.getElementById("e").replaceWith(new Element(Tag.valueOf("em"), "").attr("id", "g"));
+        assertNull(doc.getElementById("e"));
+        assertNull(doc.getElementById("f"));
+        assertEquals("em", doc.getElementById("g").tagName());
+
+        a.appendElement("u").attr("id", "h");
+        assertEquals("u", doc.getElementById("h").tagName());
+        a.empty();
+        assertNull(doc.getElementById("h"));
+        doc.select("span").remove();
+        assertNull(doc.getElementById("c"));
+        assertSame(a, doc.getElementById("a"));
+        assertEquals(0, doc.select("#c").size());
+
+        a.append("<p id=x>Four</p>");
+        assertEquals("Four", doc.getElementById("x").text());
+        a.removeChildren(a.childNodes()); // the live list, emptied as they are removed
+        assertNull(doc.getElementById("x"));
+        assertEquals(0, doc.select("#x").size());
+
+        // only the elements of a document with a built index look up to it when changed
+        assertTrue(a.inIdIndex);
+        assertFalse(doc.clone().body().child(0).inIdIndex); // until the clone builds its own
+        assertFalse(Jsoup.parse("<p id=a>").getElementById("a").inIdIndex);
+        doc.indexIds(false);
+        assertFalse(a.inIdIndex);
+    }
+
+    @Test public void idIndexSeesIdsChangedInAttributes() {
+        Document doc = Jsoup.parse("<p id=a>One</p><p id=b>Two</p>").indexIds(true);
+        Element a = doc.getElementById("a");
+        a.attributes().put("id", "z");
+        assertNull(doc.getElementById("a"));
+        assertSame(a, doc.getElementById("z"));
+        assertEquals(1, doc.select("#z").size());
+        assertEquals("Two", doc.getElementById("b").text());
+
+        Element b = doc.getElementById("b");
+        b.attributes().asList().get(0).setValue("y");
+        assertNull(doc.getElementById("b"));
+        assertSame(b, doc.getElementById("y"));
+        b.attributes().remove("id");
+        assertNull(doc.getElementById("y"));
+        b.attributes().addAll(a.attributes());
+        assertEquals(2, doc.select("#z").size());
+        assertSame(a, doc.getElementById("z"));
+
+        Document clone = doc.clone(); // indexes afresh
+        assertTrue(clone.indexIds());
+        assertEquals("One", clone.getElementById("z").text());
+        assertNotSame(a, clone.getElementById("z"));
+        clone.getElementById("z").attributes().put("id", "x");
+        assertEquals(1, clone.select("#z").size());
+        assertSame(a, doc.getElementById("z"));
+    }
+
+    @Test public void indexesDeeplyNestedIds() throws InterruptedException {
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            html.append("<div id=x").append(i).append(">");
+        final Throwable[] thrown = new Throwable[1];
+
+        Thread thread = new Thread(null, new Runnable() {
+            public void run() {
+                try {
+                    Document doc = Jsoup.parse(html.toString()).indexIds(true);
+                    Element deepest = doc.getElementById("x9999");
+                    assertSame(doc, deepest.ownerDocument());
+                    deepest.appendElement("p").attr("id", "y");
+                    assertSame(deepest, doc.getElementById("y").parent());
+                    doc.getElementById("x1").remove();
+                    assertNull(doc.getElementById("x9999"));
+                } catch (Throwable e) {
+                    thrown[0] = e;
+                }
+            }
+        }, "deep", 128 * 1024); // a small stack, that walking up recursively would overflow
+        thread.start();
+        thread.join();
+        assertNull(thrown[0]);
+    }
+
     @Test public void setTextPreservesDocumentStructure() {
         Document doc = Jsoup.parse("<p>Hello</p>");
         doc.text("Replaced");
@@ -136,6 +136,63 @@ public class ElementTest {
         assertTrue(2 == ps.get(2).elementSiblingIndex());
     }
 
+    @Test public void testElementSiblingIndexAfterChanges() {
+        Document doc = Jsoup.parse("<div>a<p>One</p>b<p>Two</p>c<p>Three</p></div>");
+        Element div = doc.select("div").first();
+        Elements ps = doc.select("p");
+        assertEquals(3, div.childrenSize());
+        assertEquals(2, ps.get(2).elementIndex());
+        assertSame(ps.get(1), ps.get(0).nextElementSibling());
+        assertSame(ps.get(1), ps.get(2).previousElementSibling());
+
+        ps.get(0).remove();
+        assertEquals(2, div.childrenSize());
+        assertEquals(0, ps.get(1).elementIndex());
+        assertNull(ps.get(1).previousElementSibling());
+
+        div.prependElement("span");
+        div.appendText("d");
+        div.appendElement("i");
+        assertEquals(4, div.childrenSize());
+        assertEquals(2, ps.get(2).elementIndex());
+        assertEquals("i", ps.get(2).nextElementSibling().tagName());
+        assertEquals("span", ps.get(2).firstElementSibling().tagName());
+        assertEquals("i", ps.get(2).lastElementSibling().tagName());
+
+        ps.get(1).replaceWith(new TextNode("e", ""));
+        assertEquals(1, ps.get(2).elementIndex());
+        assertEquals(new Integer(1), ps.get(2).elementSiblingIndex());
+        assertSame(ps.get(2), doc.select("div > :nth-child(2)").first());
+        assertSame(ps.get(2), doc.select("div > :nth-last-child(2)").first());
+
+        div.empty();
+        assertEquals(0, div.childrenSize());
+    }
+
+    @Test public void testElementTypeIndexAfterChanges() {
+        Document doc = Jsoup.parse("<div><p>One</p><span>a</span><p>Two</p><p>Three</p></div>");
+        Element div = doc.select("div").first();
+        Elements ps = doc.select("p");
+        assertEquals(2, ps.get(2).elementTypeIndex());
+        assertEquals(3, ps.get(2).elementTypeCount());
+        assertEquals(1, div.child(1).elementTypeCount());
+        assertSame(ps.get(1), doc.select("p:nth-of-type(2)").first());
+        assertSame(ps.get(1), doc.select("p:nth-last-of-type(2)").first());
+
+        ps.get(0).remove();
+        div.prependElement("p");
+        div.appendElement("span");
+        assertEquals(1, ps.get(1).elementTypeIndex());
+        assertEquals(2, div.child(1).elementTypeCount());
+        assertEquals(0, doc.select("span:only-of-type").size());
+
+        ps.get(2).tagName("span");
+        assertEquals(1, ps.get(2).elementTypeIndex());
+        assertEquals(3, ps.get(2).elementTypeCount());
+        assertEquals(2, ps.get(1).elementTypeCount());
+        assertSame(div.child(4), doc.select("span:nth-last-of-type(1)").first());
+    }
+
     @Test public void testGetElementsWithClass() {
         Document doc = Jsoup.parse("<div class='mellow yellow'><span class=mellow>Hello <b class='yellow'>Yellow!</b></span><p>Empty</p></div>");
 
@@ -197,6 +254,27 @@ public class ElementTest {
         assertFalse(doc.hasClass("mellow"));
     }
 
+    @Test public void testHasClassScansAttribute() {
+        Document doc = Jsoup.parse("<div class=' One\ttwo\n  threE '></div><p class=onetwo></p><span class></span>");
+        Element div = doc.select("div").first();
+        assertTrue(div.hasClass("one"));
+        assertTrue(div.hasClass("TWO"));
+        assertTrue(div.hasClass("three"));
+        assertFalse(div.hasClass("on"));
+        assertFalse(div.hasClass("one two"));
+        assertFalse(div.hasClass(""));
+        assertEquals(3, div.classNames().size());
+        assertFalse(doc.select("p").first().hasClass("one"));
+        assertTrue(doc.select("p").first().hasClass("onetwo"));
+        assertFalse(doc.select("span").first().hasClass("one"));
+        assertEquals(0, doc.select("span").first().classNames().size());
+
+        div.attr("class", "four"); // seen by hasClass, even once classNames are cached
+        assertTrue(div.hasClass("four"));
+        assertFalse(div.hasClass("one"));
+        assertEquals(1, doc.select(".four").size());
+    }
+
     @Test public void testClassUpdates() {
         Document doc = Jsoup.parse("<div class='mellow yellow'></div>");
         Element div = doc.select("div").first();
@@ -7,6 +7,7 @@ import org.jsoup.select.Elements;
 import org.jsoup.select.NodeVisitor;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -252,4 +253,37 @@ public class NodeTest {
         assertEquals("<div id=\"1\">Text 1 <p>One</p> Text 2 <p>Two</p><p>Three</p></div><div id=\"2\">Text 1 updated"
             +"<p>One</p> Text 2 <p>Two</p><p>Three</p></div>", TextUtil.stripNewlines(doc.body().html()));
     }
+
+    @Test public void siblingIndexesFollowInsertsAndRemoves() {
+        Document doc = Jsoup.parse("<div><p>0</p><p>1</p><p>2</p><p>3</p><p>4</p></div>");
+        Element div = doc.select("div").first();
+        Elements ps = doc.select("p");
+        ps.get(1).remove();
+        ps.get(3).remove();
+        div.prependElement("span");
+        ps.get(2).after("<i>x</i>");
+        assertEquals("<span></span><p>0</p><p>2</p><i>x</i><p>4</p>", TextUtil.stripNewlines(div.html()));
+        for (int i = 0; i < div.childNodeSize(); i++)
+            assertEquals(i, div.childNode(i).siblingIndex());
+        assertEquals("i", ps.get(4).previousSibling().nodeName());
+        assertEquals("p", div.childNode(0).nextSibling().nodeName());
+    }
+
+    @Test public void removeChildren() {
+        Document doc = Jsoup.parse("<div>One<p>Two</p>Three<p>Four</p>Five</div>");
+        Element div = doc.select("div").first();
+        List<Node> nodes = div.childNodesCopy(); // not the children, so fails
+        try {
+            div.removeChildren(nodes);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        assertEquals(5, div.childNodeSize());
+
+        Node one = div.childNode(0);
+        div.removeChildren(doc.select("p"));
+        div.removeChildren(Collections.singletonList(one));
+        assertEquals("ThreeFive", div.html());
+        assertNull(one.parent());
+        assertEquals(1, div.childNode(1).siblingIndex());
+    }
 }
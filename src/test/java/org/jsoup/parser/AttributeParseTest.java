@@ -66,4 +66,14 @@ public class AttributeParseTest {
         Elements els = Jsoup.parse(html).select("a");
         assertEquals("&wr_id=123&mid-size=true&ok=&wr", els.first().attr("href"));
     }
+
+    @Test public void decodesSameWithErrorTracking() {
+        // references are decoded by the tokeniser when tracking errors, and by the attribute when read otherwise
+        String html = "<a href='?a=1&amp;b=&lt;2&gt&notit&#65x&#x42;' title=&amp=&quot;x\"&quot y=\"&\">One</a>";
+        Element tracked = Parser.htmlParser().setTrackErrors(100).parseInput(html, "").select("a").first();
+        Element lazy = Parser.htmlParser().parseInput(html, "").select("a").first();
+        assertEquals("?a=1&b=<2>&notitAxB", tracked.attr("href"));
+        assertEquals(tracked.attributes(), lazy.attributes());
+        assertEquals(tracked.outerHtml(), lazy.outerHtml());
+    }
 }
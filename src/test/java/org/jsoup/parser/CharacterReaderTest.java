@@ -2,6 +2,8 @@ package org.jsoup.parser;
 
 import org.junit.Test;
 
+import java.io.StringReader;
+
 import static org.junit.Assert.*;
 
 /**
@@ -194,6 +196,26 @@ public class CharacterReaderTest {
         assertFalse(r.containsIgnoreCase("one"));
     }
 
+    @Test public void containsIgnoreCaseAsPositionMoves() {
+        CharacterReader r = new CharacterReader("a<b c<d </TITLE> e<f </title> g<h");
+        assertTrue(r.containsIgnoreCase("</title"));
+        r.consumeTo("</TITLE>");
+        assertTrue(r.containsIgnoreCase("</title")); // at the found position
+        r.advance();
+        assertTrue(r.containsIgnoreCase("</title")); // past it, finds the next
+        r.consumeTo("</title>");
+        r.advance();
+        assertFalse(r.containsIgnoreCase("</title"));
+        assertFalse(r.containsIgnoreCase("</title"));
+
+        r = new CharacterReader("x</title>");
+        r.mark();
+        r.consumeToEnd();
+        assertFalse(r.containsIgnoreCase("</title"));
+        r.rewindToMark(); // back before where it was last looked for
+        assertTrue(r.containsIgnoreCase("</title"));
+    }
+
     @Test public void matchesAny() {
         char[] scan = {' ', '\n', '\t'};
         CharacterReader r = new CharacterReader("One\nTwo\tThree");
@@ -204,4 +226,103 @@ public class CharacterReaderTest {
         assertFalse(r.matchesAny(scan));
     }
 
+    @Test public void readerInputAcrossBufferRefills() {
+        // small buffer, to force compaction and refills mid-token
+        CharacterReader r = new CharacterReader(new StringReader("<p class=one>Hello &amp; there, <b>friend</b></p>"), 8);
+        assertEquals('<', r.consume());
+        assertEquals("p", r.consumeLetterSequence());
+        r.advance();
+        assertEquals("class=one", r.consumeTo('>'));
+        assertTrue(r.matchConsume(">"));
+        assertEquals("Hello ", r.consumeToAny('&', '<'));
+        assertEquals(19, r.pos());
+
+        r.mark();
+        assertEquals("&amp; there, <b>friend", r.consumeTo("</"));
+        r.rewindToMark();
+        assertEquals('&', r.current());
+        assertEquals(13, r.nextIndexOf("<b>"));
+        assertTrue(r.containsIgnoreCase("</P>"));
+
+        assertEquals("&amp; there, ", r.consumeTo('<'));
+        r.unconsume();
+        assertEquals(' ', r.consume());
+        assertEquals("<b>friend</b></p>", r.consumeToEnd());
+        assertTrue(r.isEmpty());
+        assertEquals(CharacterReader.EOF, r.current());
+    }
+
+    @Test public void readerInputLongRuns() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            sb.append("0123456789");
+        String data = sb.toString();
+        CharacterReader r = new CharacterReader(new StringReader(data + "<end>"), 16);
+        assertEquals(data, r.consumeTo('<'));
+        assertEquals(data.length(), r.pos());
+        assertTrue(r.matches("<end>"));
+        assertEquals("<end>", r.consumeToEnd());
+    }
+
+    @Test public void consumeNameCanonicalises() {
+        NameCache names = new NameCache();
+        CharacterReader r = new CharacterReader("div CLASS=one Div class=two");
+        String first = r.consumeName(names, CharClass.anyOf(' ', '='));
+        assertEquals("div", first);
+        r.advance();
+        String attr = r.consumeName(names, CharClass.anyOf(' ', '='));
+        assertEquals("class", attr);
+        r.advance();
+        assertEquals("one", r.consumeTo(' '));
+        r.advance();
+        assertSame(first, r.consumeName(names, CharClass.anyOf(' ', '=')));
+        r.advance();
+        assertSame(attr, r.consumeName(names, CharClass.anyOf(' ', '=')));
+    }
+
+    @Test public void consumeNameAcrossBufferRefills() {
+        NameCache names = new NameCache();
+        CharacterReader r = new CharacterReader(new StringReader("<blockquote><BLOCKQUOTE>"), 4);
+        r.advance();
+        String first = r.consumeName(names, CharClass.anyOf('>'));
+        assertEquals("blockquote", first);
+        assertTrue(r.matchConsume("><"));
+        assertSame(first, r.consumeName(names, CharClass.anyOf('>')));
+    }
+
+    @Test public void consumeToAnyCharClass() {
+        CharClass stops = CharClass.anyOf('&', '<', '\u0000');
+        CharacterReader r = new CharacterReader(new StringReader("One \u00E9t\u00E9 &amp; <b>Two\u0000</b>"), 3);
+        assertEquals("One \u00E9t\u00E9 ", r.consumeToAny(stops)); // non-ascii chars are never in a class
+        assertTrue(r.matchesAny(stops));
+        assertEquals("&", r.consumeAsString());
+        assertEquals("amp; ", r.consumeToAny(stops));
+        r.advance();
+        assertEquals("b>Two", r.consumeToAny(stops));
+        r.advance();
+        assertEquals("", r.consumeToAny(stops));
+        r.advance();
+        assertEquals("/b>", r.consumeToAny(stops));
+        assertTrue(r.isEmpty());
+        assertFalse(r.matchesAny(stops));
+
+        assertTrue(CharClass.hexDigits.contains('F'));
+        assertFalse(CharClass.hexDigits.contains('g'));
+        assertFalse(CharClass.letters.contains(CharacterReader.EOF));
+    }
+
+    @Test public void consumeEntityFindsLongestMatch() {
+        EntityTrie entities = EntityTrie.entities;
+        CharacterReader r = new CharacterReader(new StringReader("notit; notin; clubsuite; amp"), 4);
+        int not = r.consumeEntity(entities);
+        assertEquals('\u00AC', entities.value(not)); // base entity, so matches as a prefix
+        assertEquals("it; ", r.consumeTo('n'));
+        int notin = r.consumeEntity(entities);
+        assertEquals('\u2209', entities.value(notin)); // extended, and followed by ;
+        assertTrue(r.matchConsume("; "));
+        assertEquals(EntityTrie.noMatch, r.consumeEntity(entities)); // clubsuit needs the ;
+        assertEquals("clubsuite; ", r.consumeTo('a'));
+        assertEquals('&', entities.value(r.consumeEntity(entities)));
+        assertTrue(r.isEmpty());
+    }
 }
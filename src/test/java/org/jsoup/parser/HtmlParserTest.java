@@ -5,11 +5,14 @@ import org.jsoup.TextUtil;
 import org.jsoup.helper.StringUtil;
 import org.jsoup.nodes.*;
 import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 import org.junit.Test;
 
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -746,6 +749,15 @@ public class HtmlParserTest {
         assertEquals("&amp; \" &reg; &amp;icy &amp;hopf &icy; &hopf;", doc.body().html());
     }
 
+    @Test public void matchesBaseEntityAsPrefix() {
+        // a base entity matches as the prefix of a longer name, as in browsers. extended entities still need their ;
+        String html = "<p title='&notit; &copy2013'>&notit; &notin; &copy2013 &clubsuite; &amp;</p>";
+        Document doc = Jsoup.parse(html);
+        Element p = doc.select("p").first();
+        assertEquals("\u00ACit; \u2209 \u00A92013 &clubsuite; &", p.text());
+        assertEquals("&notit; &copy2013", p.attr("title")); // not in attributes, where the name runs on
+    }
+
     @Test public void handlesXmlDeclarationAsBogusComment() {
         String html = "<?xml encoding='UTF-8' ?><body>One</body>";
         Document doc = Jsoup.parse(html);
@@ -806,4 +818,266 @@ public class HtmlParserTest {
         Document doc = Jsoup.parse(h);
         assertEquals("<img>\n<svg>\n <image />\n</svg>", doc.body().html());
     }
+
+    @Test public void reusedTokensDoNotShareState() {
+        // the tokeniser reuses token instances, so check attributes and text don't bleed between elements
+        String h = "<div id=1 class=a><p><div><span id=2></span><div data-x><!--one--><!--two--><table>A<tr>B</tr>C</table>";
+        Document doc = Jsoup.parse(h);
+        Elements divs = doc.select("div");
+        assertEquals(3, divs.size());
+        assertEquals("1", divs.get(0).id());
+        assertEquals(2, divs.get(0).attributes().size());
+        assertEquals(0, divs.get(1).attributes().size());
+        assertEquals("2", doc.select("span").first().id());
+        assertEquals(1, divs.get(2).attributes().size());
+        assertTrue(divs.get(2).hasAttr("data-x"));
+        assertEquals("<!--one--><!--two--><table>A<tbody><tr>B</tr>C</tbody></table>", TextUtil.stripNewlines(divs.get(2).html()));
+    }
+
+    @Test public void reconstructsLimitedActiveFormattingElements() {
+        // only three matching formatting elements are kept in the active list (noah's ark), so reconstructs three
+        String h = "<p><b class=x><b class=x><b class=x><b class=x>One</p><p>Two";
+        Document doc = Jsoup.parse(h);
+        assertEquals("<p><b class=\"x\"><b class=\"x\"><b class=\"x\"><b class=\"x\">One</b></b></b></b></p><p><b class=\"x\"><b class=\"x\"><b class=\"x\">Two</b></b></b></p>",
+                TextUtil.stripNewlines(doc.body().html()));
+    }
+
+    @Test public void reportsEventsAsDocumentWouldBeBuilt() {
+        String html = "<!doctype html><title>T</title><p class=one>One<p>Two &amp; <b>three</b><!-- c -->" +
+                "<ul><li>a<li>b</ul><script>x<y</script><table><tr><td>c</table><img src=x.png>";
+        Document doc = Jsoup.parse(html);
+        final StringBuilder fromDoc = new StringBuilder();
+        new NodeTraversor(new NodeVisitor() {
+            public void head(Node node, int depth) {
+                if (node instanceof Element && !(node instanceof Document))
+                    fromDoc.append("<").append(node.nodeName()).append(node.attributes().html()).append(">");
+                else if (node instanceof TextNode)
+                    fromDoc.append(((TextNode) node).getWholeText());
+                else if (node instanceof DataNode)
+                    fromDoc.append(((DataNode) node).getWholeData());
+                else if (node instanceof Comment)
+                    fromDoc.append("<!--").append(((Comment) node).getData()).append("-->");
+                else if (node instanceof DocumentType)
+                    fromDoc.append("<!doctype ").append(node.attr("name")).append(">");
+            }
+
+            public void tail(Node node, int depth) {
+                if (node instanceof Element && !(node instanceof Document))
+                    fromDoc.append("</").append(node.nodeName()).append(">");
+            }
+        }).traverse(doc);
+
+        EventRecorder events = new EventRecorder();
+        Parser.htmlParser().parseInput(html, "", events);
+        assertEquals(fromDoc.toString(), events.toString());
+        assertTrue(events.toString().startsWith("<!doctype html><html><head><title>T</title></head><body><p class=\"one\">One</p>"));
+    }
+
+    @Test public void reportsEventsFromReader() {
+        EventRecorder events = new EventRecorder();
+        Parser.htmlParser().parseInput(new java.io.StringReader("<div id=1>One<p>Two</div>"), "", events);
+        assertEquals("<html><head></head><body><div id=\"1\">One<p>Two</p></div></body></html>", events.toString());
+    }
+
+    @Test public void reportsMovedContentInPlace() {
+        // foster parented text stays in the table, and the p stays where it was started rather than being moved out of
+        // the misnested b; but events stay well nested
+        EventRecorder events = new EventRecorder();
+        Parser.htmlParser().parseInput("<table><tr>Foo<td>One</table><b>Two<p>Three</b>Four", "", events);
+        assertEquals("<html><head></head><body><table><tbody><tr>Foo<td>One</td></tr></tbody></table>" +
+                "<b>Two<p>ThreeFour</p></b></body></html>", events.toString());
+    }
+
+    @Test public void filtersContentAsParsed() {
+        String html = "<!-- c --><script>s()</script><div class=ad><p>Ad<img src=a.png></div><p>One <span>Two <b>Three" +
+                "<style>b{}</style></b></span><svg><g><path/></g></svg><!-- d -->";
+        Document doc = Parser.htmlParser().setFilter(new Pruner(true)).parseInput(html, "");
+        assertEquals("<p>One Two Three</p>", TextUtil.stripNewlines(doc.body().html()));
+        assertEquals("<html><head></head><body><p>One Two Three</p></body></html>", TextUtil.stripNewlines(doc.html()));
+    }
+
+    @Test public void filteredContentIsStructuredAsUnfiltered() {
+        String html = "<script>s()</script><table><tr><td>One<div class=ad>Ad<table><td>Two</table></div>Three</table>" +
+                "<b>Four<p>Five</b>Six<div class=ad><p>Ad</div><form><input name=a><div class=ad><input name=b></div>" +
+                "</form><ul><li>Seven<li>Eight<div class=ad><li>Ad</div><li>Nine</ul>";
+        Document filtered = Parser.htmlParser().setFilter(new Pruner(false)).parseInput(html, "");
+        Document pruned = Jsoup.parse(html);
+        pruned.select("script, div.ad").remove();
+        assertEquals(pruned.html(), filtered.html());
+
+        FormElement form = (FormElement) filtered.select("form").first();
+        assertEquals(1, form.elements().size());
+    }
+
+    @Test public void filteredFormIsClosed() {
+        Document doc = Parser.htmlParser().setFilter(new Pruner(true)).parseInput(
+                "<form class=ad><input name=a><p>Ad</form><p>One<form><input name=b></form>", "");
+        assertEquals("<p>One</p><form><input name=\"b\"></form>", TextUtil.stripNewlines(doc.body().html()));
+        assertEquals(1, ((FormElement) doc.select("form").first()).elements().size());
+    }
+
+    @Test public void reportsFilteredEvents() {
+        EventRecorder events = new EventRecorder();
+        Parser.htmlParser().setFilter(new Pruner(true)).parseInput("<div class=ad>Ad</div><p>One <span>Two</span>", "", events);
+        assertEquals("<html><head></head><body><p>One Two</p></body></html>", events.toString());
+    }
+
+    @Test public void stopsAfterHead() {
+        String html = "<html><head><title>T</title><meta name=a content=b><script>s()</script>" +
+                "<link rel=canonical href=/c></head><body><p>One</p><p>Two</p></body></html>";
+        Document doc = Parser.htmlParser().setStopCondition(StopCondition.afterHead).parseInput(html, "");
+        assertEquals("<html><head><title>T</title><meta name=\"a\" content=\"b\"><script>s()</script>" +
+                "<link rel=\"canonical\" href=\"/c\"></head><body></body></html>", TextUtil.stripNewlines(doc.html()));
+
+        // implied head and body; the element that starts the body is kept, empty
+        doc = Parser.htmlParser().setStopCondition(StopCondition.afterHead).parseInput("<title>T</title><div>One<p>Two", "");
+        assertEquals("<html><head><title>T</title></head><body><div></div></body></html>", TextUtil.stripNewlines(doc.html()));
+    }
+
+    @Test public void stopsOnCondition() {
+        StopCondition atTable = new StopCondition() {
+            public boolean stop(Document doc, Element current) {
+                return current != null && current.tagName().equals("table");
+            }
+        };
+        Document doc = Parser.htmlParser().setStopCondition(atTable)
+                .parseInput("<div><p>One<table><tr><td>Two</table><p>Three</div>", "");
+        assertEquals("<div><p>One</p><table></table></div>", TextUtil.stripNewlines(doc.body().html()));
+    }
+
+    @Test public void stopsReportingEvents() {
+        EventRecorder events = new EventRecorder();
+        Parser.htmlParser().setStopCondition(StopCondition.afterHead)
+                .parseInput(new java.io.StringReader("<title>T</title><p>One<p>Two"), "", events);
+        assertEquals("<html><head><title>T</title></head><body><p></p></body></html>", events.toString());
+    }
+
+    @Test public void reusedParserStartsClean() {
+        Parser parser = Parser.htmlParser();
+        Document first = parser.parseInput("<base href='http://example.com/'><form><b>One<table><tr><td>Two", "");
+        assertEquals("http://example.com/", first.baseUri());
+
+        String html = "<p>One<a href=/two>Two</a><input name=three>";
+        Document second = parser.parseInput(html, "http://example.org/");
+        assertEquals(Jsoup.parse(html, "http://example.org/").html(), second.html());
+        assertEquals("http://example.org/two", second.select("a").first().absUrl("href"));
+        assertEquals(0, second.select("form").size());
+
+        Document third = parser.parseInput(new java.io.StringReader("<p>Three"), "");
+        assertEquals("<p>Three</p>", third.body().html());
+    }
+
+    @Test public void pooledParserIsPerThread() throws InterruptedException {
+        final Parser pooled = Parser.pooled();
+        pooled.setTrackErrors(10).setStopCondition(StopCondition.afterHead);
+        assertTrue(pooled == Parser.pooled());
+        assertTrue(!pooled.isTrackErrors()); // settings reset on each get
+        assertNull(pooled.getStopCondition());
+        assertEquals("One", pooled.parseInput("<p>One", "").text());
+
+        final Parser[] other = new Parser[1];
+        Thread thread = new Thread() {
+            public void run() {
+                other[0] = Parser.pooled();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertTrue(other[0] != null && other[0] != pooled);
+
+        // a pooled parse started within a pooled parse gets its own parser
+        final StringBuilder nested = new StringBuilder();
+        pooled.parseInput("<p>One", "", new EventRecorder() {
+            public void text(String text) {
+                assertTrue(Parser.pooled() != pooled);
+                nested.append(Parser.pooled().parseInput("<b>" + text, "").body().html());
+            }
+        });
+        assertEquals("<b>One</b>", nested.toString());
+    }
+
+    @Test public void sharesSourceText() {
+        String html = "<title>Title</title><p>One &amp; Two</p><p>Three\u0000</p><textarea>x<y</textarea>";
+        Parser parser = Parser.pooled().setSharedSourceText(true);
+        Document doc = parser.parseInput(html, "");
+        assertEquals(Jsoup.parse(html).html(), doc.html());
+
+        parser = Parser.pooled(); // the shared input buffer is not reused
+        assertFalse(parser.isSharedSourceText());
+        parser.parseInput("<p>Not the same text, at all, in the least</p>", "");
+        assertEquals("Title", doc.title());
+        TextNode three = (TextNode) doc.select("p").get(1).childNode(0);
+        assertEquals("Three\u0000", three.getWholeText());
+        assertEquals("One & Two Three\u0000x<y", doc.body().text());
+
+        three.text("Four");
+        assertEquals("Four", three.getWholeText());
+        assertEquals("Four", three.attr("text"));
+        assertEquals("<p>Four</p>", three.parent().outerHtml());
+    }
+
+    @Test public void leanParseDropsCommentsAndUnrenderedWhitespace() {
+        String html = "<title> Title </title><!-- comment -->\n<div>\n <ul>\n  <li><b>One</b> <i>Two</i></li>\n  <li>Three</li>\n" +
+                " </ul>\n <span>Four</span> <p>Five</p><pre>\n <b>x</b> </pre>\n<table>\n<tr><td> </td></tr></table></div>\n";
+        Document doc = Jsoup.parse(html);
+        Document lean = Parser.htmlParser().setLean(true).parseInput(html, "");
+
+        lean.outputSettings().prettyPrint(false);
+        assertEquals("<html><head><title> Title </title>\n</head><body><div><ul><li><b>One</b> <i>Two</i></li>" +
+                "<li>Three</li>\n </ul>\n <span>Four</span><p>Five</p><pre>\n <b>x</b> </pre>\n" +
+                "<table><tbody><tr><td></td></tr></tbody></table></div></body></html>", lean.html());
+        assertEquals(doc.text(), lean.text());
+        assertEquals(doc.select("*").size(), lean.select("*").size());
+        assertEquals(0, lean.select("td").first().childNodeSize());
+    }
+
+    // skips scripts, styles, svg and ads, and optionally keeps just the text of spans and bs
+    static class Pruner implements ParseFilter {
+        private final boolean keepTextOfInlines;
+
+        Pruner(boolean keepTextOfInlines) {
+            this.keepTextOfInlines = keepTextOfInlines;
+        }
+
+        public Action element(String name, Attributes attributes) {
+            if (StringUtil.in(name, "script", "style", "svg") || attributes.get("class").equals("ad"))
+                return Action.skip;
+            if (keepTextOfInlines && StringUtil.in(name, "span", "b"))
+                return Action.keepText;
+            return Action.keep;
+        }
+
+        public boolean comment(String data) {
+            return false;
+        }
+    }
+
+    static class EventRecorder implements ParseEventHandler {
+        private final StringBuilder events = new StringBuilder();
+
+        public void startElement(String name, Attributes attributes) {
+            events.append("<").append(name).append(attributes.html()).append(">");
+        }
+
+        public void endElement(String name) {
+            events.append("</").append(name).append(">");
+        }
+
+        public void text(String text) {
+            events.append(text);
+        }
+
+        public void comment(String data) {
+            events.append("<!--").append(data).append("-->");
+        }
+
+        public void doctype(String name, String publicId, String systemId) {
+            events.append("<!doctype ").append(name).append(">");
+        }
+
+        @Override
+        public String toString() {
+            return events.toString();
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package org.jsoup.parser;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+/**
+ Tests for the HtmlTokenReader.
+ */
+public class HtmlTokenReaderTest {
+    private static String tokens(HtmlTokenReader reader) {
+        StringBuilder sb = new StringBuilder();
+        while (reader.hasNext())
+            sb.append("[").append(reader.next()).append("]");
+        return sb.toString();
+    }
+
+    @Test public void readsTokensWithoutCorrection() {
+        HtmlTokenReader reader = new HtmlTokenReader("<!DOCTYPE html><p class=one>One &amp; <b>Two</p></b><!-- c --><br/>");
+        assertEquals("[<!doctype html>][<p class=\"one\">][One & ][<b>][Two][</p>][</b>][<!-- c -->][<br />]", tokens(reader));
+        assertFalse(reader.hasNext());
+    }
+
+    @Test public void tokenViews() {
+        HtmlTokenReader reader = new HtmlTokenReader(new StringReader("<A HREF='/one?a=1&amp;b=2' title=x>Link</a><!doctype html public \"-//W3C//DTD HTML 4.01//EN\">"));
+        HtmlToken start = reader.next();
+        assertEquals(HtmlToken.Type.StartTag, start.type());
+        assertEquals("a", start.name());
+        assertEquals("/one?a=1&b=2", start.attr("href"));
+        assertEquals(2, start.attributes().size());
+        start.attributes().put("href", "/two");
+        assertEquals("/one?a=1&b=2", start.attr("href")); // attributes are a copy
+        assertNull(start.data());
+
+        HtmlToken text = reader.next();
+        assertEquals(HtmlToken.Type.Text, text.type());
+        assertEquals("Link", text.data());
+        assertNull(text.name());
+        assertEquals(0, text.attributes().size());
+
+        HtmlToken end = reader.next();
+        assertEquals(HtmlToken.Type.EndTag, end.type());
+        assertEquals("a", end.name());
+
+        HtmlToken doctype = reader.next();
+        assertEquals(HtmlToken.Type.Doctype, doctype.type());
+        assertEquals("html", doctype.name());
+        assertEquals("-//W3C//DTD HTML 4.01//EN", doctype.publicId());
+        assertEquals("", doctype.systemId());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test public void readsRawTextElementContentAsText() {
+        HtmlTokenReader reader = new HtmlTokenReader("<script>if (a<b) x = '<p>';</script><title>A <i>B</title><style>p>b{}</style><script/><p>");
+        assertEquals("[<script>][if (a<b) x = '<p>';][</script>][<title>][A <i>B][</title>][<style>][p>b{}][</style>]" +
+                "[<script />][<p>]", tokens(reader));
+    }
+
+    @Test public void tokensStayValidAfterReadingOn() {
+        HtmlTokenReader reader = new HtmlTokenReader("<p id=1><p id=2><!--one--><!--two-->");
+        List<HtmlToken> read = new ArrayList<HtmlToken>();
+        while (reader.hasNext())
+            read.add(reader.next());
+        assertEquals(4, read.size());
+        assertEquals("1", read.get(0).attr("id"));
+        assertEquals("2", read.get(1).attr("id"));
+        assertEquals("one", read.get(2).data());
+        assertEquals("two", read.get(3).data());
+    }
+
+    @Test(expected = NoSuchElementException.class) public void nextAtEndThrows() {
+        HtmlTokenReader reader = new HtmlTokenReader("");
+        assertFalse(reader.hasNext());
+        reader.next();
+    }
+}
@@ -0,0 +1,132 @@
+package org.jsoup.parser;
+
+import org.jsoup.TextUtil;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParseLimitsTest {
+    private static Parser limited(ParseLimits limits) {
+        return Parser.htmlParser().setLimits(limits.policy(ParseLimits.Policy.truncate));
+    }
+
+    @Test public void truncatesDepth() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            html.append("<div>").append(i);
+        Document doc = limited(new ParseLimits().maxDepth(5)).parseInput(html.toString(), "");
+        assertEquals(3, doc.select("div").size()); // html and body, then three divs
+        assertEquals(1, doc.select("div div div").size());
+        assertTrue(doc.select("div div div").first().text().endsWith("99989999"));
+
+        // void and self closing elements are kept, as they don't go deeper
+        doc = limited(new ParseLimits().maxDepth(3)).parseInput("<div><p>One<br>Two<img src=x /></div>", "");
+        assertEquals("<div>One<br>Two<img src=\"x\"></div>", TextUtil.stripNewlines(doc.body().html()));
+        doc = limited(new ParseLimits().maxDepth(3)).parseInput("<p>One<br>Two<p>Three", "");
+        assertEquals("<p>One<br>Two</p><p>Three</p>", TextUtil.stripNewlines(doc.body().html()));
+
+        // the content of a dropped script or textarea is read as the tokeniser would, and kept as text
+        doc = limited(new ParseLimits().maxDepth(3))
+                .parseInput("<div><script>if (a<b) document.write('<i>x</i>')</script><textarea><b>Two</textarea>", "");
+        assertEquals("if (a<b) document.write('<i>x</i>')<b>Two", doc.select("div").first().text());
+        assertEquals(1, doc.body().select("*").size() - 1); // just the div
+    }
+
+    @Test public void truncatesDeepNestingWithinTheLimit() {
+        // too deep start tags are dropped rather than pushed, so the open elements (walked per token) stay within it
+        final int[] maxOpen = new int[1];
+        Parser parser = new Parser(new HtmlTreeBuilder() {
+            @Override protected boolean process(Token token) {
+                maxOpen[0] = Math.max(maxOpen[0], stack.size());
+                return super.process(token);
+            }
+        }).setLimits(new ParseLimits().maxDepth(512).policy(ParseLimits.Policy.truncate));
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            html.append("<div>");
+        html.append("One");
+        for (int i = 0; i < 100000; i++)
+            html.append("</div>");
+        html.append("<p>Two");
+
+        Document doc = parser.parseInput(html.toString(), "");
+        assertTrue(maxOpen[0] <= 512);
+        assertEquals(510, doc.select("div").size());
+        assertEquals("One", doc.select("div").last().text());
+        assertEquals("Two", doc.body().child(1).text()); // the end tags of the dropped divs closed them, not the kept
+
+        doc = limited(new ParseLimits().maxDepth(3)).parseInput("<div><div><span>One</span>Two</div>Three</div>Four", "");
+        assertEquals("<div>OneTwoThree</div>Four", TextUtil.stripNewlines(doc.body().html()));
+    }
+
+    @Test public void truncatesXmlDepth() {
+        Parser parser = Parser.xmlParser().setLimits(new ParseLimits().maxDepth(2).policy(ParseLimits.Policy.truncate));
+        Document doc = parser.parseInput("<a><b><c>One</c>Two</b><d/></a><e>Three</e>", "");
+        assertEquals("<a>OneTwo<d /></a><e>Three</e>", TextUtil.stripNewlines(doc.html()));
+    }
+
+    @Test public void truncatesNodes() {
+        Document doc = limited(new ParseLimits().maxNodes(6)).parseInput("<p>One<p>Two<p>Three<p>Four", "");
+        assertEquals("<p>One</p><p>Two</p>", TextUtil.stripNewlines(doc.body().html()));
+    }
+
+    @Test public void truncatesAttributes() {
+        Document doc = limited(new ParseLimits().maxAttributes(2).maxAttributeValueLength(3))
+                .parseInput("<p a=1 b=12345 c=3 d=4><a href='/one&amp;two'>", "");
+        assertEquals("<p a=\"1\" b=\"123\"><a href=\"/on\"></a></p>", TextUtil.stripNewlines(doc.body().html()));
+
+        // the length is of the value in the input, whether references are decoded as parsed (when tracking errors) or not
+        String html = "<p title='&lt;&lt;&lt;'>";
+        ParseLimits limits = new ParseLimits().maxAttributeValueLength(8);
+        assertEquals("<<", limited(limits).parseInput(html, "").select("p").attr("title"));
+        assertEquals("<<", limited(limits).setTrackErrors(10).parseInput(html, "").select("p").attr("title"));
+    }
+
+    @Test public void truncatesInput() {
+        Parser parser = limited(new ParseLimits().maxInputLength(10));
+        assertEquals("<p>One Two</p>", parser.parseInput("<p>One Two Three", "").body().html());
+        assertEquals("<p>One Two</p>", parser.parseInput(new StringReader("<p>One Two Three"), "").body().html());
+        assertEquals("<p>One</p>", parser.parseInput(new StringReader("<p>One"), "").body().html());
+    }
+
+    @Test public void failsOverLimits() {
+        assertFails(new ParseLimits().maxDepth(3), "<div><div>", "Parse limit exceeded: max depth of 3");
+        assertFails(new ParseLimits().maxDepth(3), "<div><script>", "Parse limit exceeded: max depth of 3");
+        assertFails(new ParseLimits().maxNodes(4), "<p>One<p>Two", "Parse limit exceeded: max nodes of 4");
+        assertFails(new ParseLimits().maxAttributes(1), "<p a b>", "Parse limit exceeded: max attributes of 1");
+        assertFails(new ParseLimits().maxAttributeValueLength(2), "<p a=123>",
+                "Parse limit exceeded: max attribute value length of 2");
+        assertFails(new ParseLimits().maxInputLength(5), "<p>One", "Parse limit exceeded: max input length of 5");
+
+        try {
+            Parser.htmlParser().setLimits(new ParseLimits().maxInputLength(5)).parseInput(new StringReader("<p>One"), "");
+            fail();
+        } catch (ParseLimitException expected) {}
+
+        // end tag attributes and repeated attribute names aren't counted
+        Parser parser = Parser.htmlParser().setLimits(new ParseLimits().maxAttributes(1).maxAttributeValueLength(2));
+        assertEquals("<p a=\"2\">One</p>", parser.parseInput("<p a=1 a=2>One</p b=1 c=12345>", "").body().html());
+
+        // within the limits
+        ParseLimits limits = new ParseLimits().maxDepth(4).maxNodes(6).maxAttributes(1).maxAttributeValueLength(1)
+                .maxInputLength(13);
+        Document doc = Parser.htmlParser().setLimits(limits).parseInput("<p a=1>One<p>", "");
+        assertEquals("<p a=\"1\">One</p><p></p>", TextUtil.stripNewlines(doc.body().html()));
+        doc = Parser.htmlParser().setLimits(new ParseLimits().maxDepth(3)).parseInput("<p>One<br>Two<p>Three", "");
+        assertEquals("<p>One<br>Two</p><p>Three</p>", TextUtil.stripNewlines(doc.body().html()));
+    }
+
+    private static void assertFails(ParseLimits limits, String html, String message) {
+        try {
+            Parser.htmlParser().setLimits(limits).parseInput(html, "");
+            fail();
+        } catch (ParseLimitException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -57,6 +57,20 @@ public class TagTest {
         assertTrue(foo.formatAsBlock());
     }
 
+    @Test public void treeBuilderCategories() {
+        assertTrue(Tag.valueOf("h3").is(Tag.Heading));
+        assertTrue(Tag.valueOf("TD").is(Tag.ScopeBoundary | Tag.ListScopeBoundary));
+        assertTrue(Tag.valueOf("marquee").is(Tag.Special)); // not a known tag, but still categorised
+        assertFalse(Tag.valueOf("span").is(Tag.Special));
+        assertFalse(Tag.valueOf("foo").is(~0));
+
+        Token.StartTag start = new Token.StartTag("ol");
+        assertTrue(start.is(Tag.ListScopeBoundary));
+        start.name("b");
+        assertFalse(start.is(Tag.ListScopeBoundary));
+        assertTrue(start.is(Tag.Formatter));
+    }
+
     @Test(expected = IllegalArgumentException.class) public void valueOfChecksNotNull() {
         Tag.valueOf(null);
     }
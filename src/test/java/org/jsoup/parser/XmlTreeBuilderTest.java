@@ -122,4 +122,11 @@ public class XmlTreeBuilderTest {
         Document doc = Jsoup.parse("x", "", Parser.xmlParser());
         assertEquals(Syntax.xml, doc.outputSettings().syntax());
     }
+
+    @Test public void leanParseDropsCommentsOnly() {
+        String xml = "<?xml version='1' ?><!-- comment --><doc>\n <val>One</val>\n</doc>";
+        Document doc = Parser.xmlParser().setLean(true).parseInput(xml, "");
+        doc.outputSettings().prettyPrint(false);
+        assertEquals("<?xml version='1' ?><doc>\n <val>One</val>\n</doc>", doc.html());
+    }
 }
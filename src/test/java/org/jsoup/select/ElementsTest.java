@@ -197,6 +197,15 @@ public class ElementsTest {
         doc.select("p").remove();
         assertEquals("<div> jsoup </div>", doc.body().html());
     }
+
+    @Test public void removeAcrossParents() {
+        Document doc = Jsoup.parse("<div><p>1</p>a<p>2</p></div><div><p>3</p><span><p>4</p></span>b</div>");
+        doc.outputSettings().prettyPrint(false);
+
+        doc.select("p").remove();
+        assertEquals("<div>a</div><div><span></span>b</div>", doc.body().html());
+        assertEquals(1, doc.select("span").first().nextSibling().siblingIndex());
+    }
     
     @Test public void eq() {
         String h = "<p>Hello<p>there<p>world";